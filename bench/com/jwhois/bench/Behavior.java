@@ -0,0 +1,145 @@
+package com.jwhois.bench;
+
+import java.util.Random;
+
+/**
+ * How a virtual host of the {@link WhoisFarm} answers: the latency before the first byte, the share of throttled
+ * replies and of connection resets, and an optional slow drip of the response. Instances are immutable.
+ */
+public class Behavior {
+	public static final Behavior	DIRECT	= new Behavior( Latency.NONE, 0, 0, 0, 0 );
+
+	private final Latency			latency;
+	private final double			throttleRate;
+	private final double			resetRate;
+	private final int				dripBytes;
+	private final long				dripDelay;
+
+	/**
+	 * @param latency
+	 *            the delay before the first byte
+	 * @param throttleRate
+	 *            share of the queries answered with a rate limit reply, from 0 to 1
+	 * @param resetRate
+	 *            share of the queries whose connection is reset halfway through the response, from 0 to 1
+	 * @param dripBytes
+	 *            the response is written in chunks of this size, 0 to write it at once
+	 * @param dripDelay
+	 *            milliseconds between two chunks
+	 */
+	public Behavior(Latency latency, double throttleRate, double resetRate, int dripBytes, long dripDelay) {
+		this.latency = (null == latency) ? Latency.NONE : latency;
+		this.throttleRate = Math.min( 1, Math.max( 0, throttleRate ) );
+		this.resetRate = Math.min( 1, Math.max( 0, resetRate ) );
+		this.dripBytes = Math.max( 0, dripBytes );
+		this.dripDelay = Math.max( 0, dripDelay );
+	}
+
+	public Latency getLatency() {
+		return latency;
+	}
+
+	public double getThrottleRate() {
+		return throttleRate;
+	}
+
+	public double getResetRate() {
+		return resetRate;
+	}
+
+	public int getDripBytes() {
+		return dripBytes;
+	}
+
+	public long getDripDelay() {
+		return dripDelay;
+	}
+
+	@Override
+	public String toString() {
+		return "latency=" + latency + " throttle=" + throttleRate + " reset=" + resetRate + " drip=" + dripBytes + ":"
+				+ dripDelay;
+	}
+
+	/**
+	 * A latency distribution in milliseconds.
+	 */
+	public static abstract class Latency {
+		public static final Latency	NONE	= fixed( 0 );
+
+		/**
+		 * @param random
+		 * @return a latency in milliseconds
+		 */
+		public abstract long sample(Random random);
+
+		public static Latency fixed(final long ms) {
+			return new Latency() {
+				@Override
+				public long sample(Random random) {
+					return ms;
+				}
+
+				@Override
+				public String toString() {
+					return "fixed:" + ms;
+				}
+			};
+		}
+
+		public static Latency uniform(final long min, final long max) {
+			return new Latency() {
+				@Override
+				public long sample(Random random) {
+					return (max > min) ? min + ( long ) (random.nextDouble() * (max - min)) : min;
+				}
+
+				@Override
+				public String toString() {
+					return "uniform:" + min + ":" + max;
+				}
+			};
+		}
+
+		/**
+		 * A long tailed distribution, close to what real registries show.
+		 *
+		 * @param median
+		 *            milliseconds
+		 * @param sigma
+		 *            the spread of the underlying normal distribution, e.g. 0.5
+		 * @return the distribution
+		 */
+		public static Latency logNormal(final double median, final double sigma) {
+			return new Latency() {
+				@Override
+				public long sample(Random random) {
+					return Math.round( median * Math.exp( sigma * random.nextGaussian() ) );
+				}
+
+				@Override
+				public String toString() {
+					return "lognormal:" + median + ":" + sigma;
+				}
+			};
+		}
+
+		/**
+		 * Parses "fixed:ms", "uniform:min:max" or "lognormal:median:sigma".
+		 *
+		 * @param spec
+		 * @return the distribution
+		 */
+		public static Latency parse(String spec) {
+			String[] ss = spec.split( ":" );
+			if ("fixed".equals( ss[0] ) && ss.length == 2)
+				return fixed( Long.parseLong( ss[1] ) );
+			if ("uniform".equals( ss[0] ) && ss.length == 3)
+				return uniform( Long.parseLong( ss[1] ), Long.parseLong( ss[2] ) );
+			if ("lognormal".equals( ss[0] ) && ss.length == 3)
+				return logNormal( Double.parseDouble( ss[1] ), Double.parseDouble( ss[2] ) );
+			throw new IllegalArgumentException( "Bad latency: " + spec );
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+package com.jwhois.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jwhois.core.Logger;
+import com.jwhois.core.NioTransport;
+import com.jwhois.core.RateLimiter;
+import com.jwhois.core.Utility;
+import com.jwhois.core.WhoisEngine;
+import com.jwhois.core.WhoisExecutors;
+import com.jwhois.core.WhoisMap;
+
+/**
+ * Runs {@link WhoisEngine#build()} against a {@link WhoisFarm} at given concurrency levels and reports the throughput
+ * and the p50/p99/p999 latencies of each level.
+ *
+ * <pre>
+ * java com.jwhois.bench.LoadDriver [-c 1,8,64] [-n 2000] [-warmup 500] [-tlds com,net,de,ac]
+ *     [-responses bench/responses] [-latency lognormal:20:0.5] [-throttle 0.01] [-reset 0.005]
+ *     [-drip 64:2] [-nio] [-virtual] [-shallow]
+ * </pre>
+ *
+ * The rate limiter of the library is switched off during the run, its waits would hide the client costs.
+ */
+public class LoadDriver {
+	private final List<String>	domains;
+	private final boolean		deepWhois;
+	private final boolean		virtual;
+
+	public LoadDriver(List<String> domains, boolean deepWhois, boolean virtual) {
+		this.domains = domains;
+		this.deepWhois = deepWhois;
+		this.virtual = virtual;
+	}
+
+	/**
+	 * Result of one concurrency level.
+	 */
+	public static class Result {
+		public final int	concurrency;
+		public final int	requests;
+		public final int	failures;
+		public final long	elapsedNanos;
+		public final long[]	latencies;
+
+		Result(int concurrency, int failures, long elapsedNanos, long[] latencies) {
+			this.concurrency = concurrency;
+			this.requests = latencies.length;
+			this.failures = failures;
+			this.elapsedNanos = elapsedNanos;
+			this.latencies = latencies;
+			Arrays.sort( this.latencies );
+		}
+
+		public double throughput() {
+			return requests * 1e9 / Math.max( 1, elapsedNanos );
+		}
+
+		/**
+		 * @param q
+		 *            the quantile, from 0 to 1
+		 * @return the latency in milliseconds
+		 */
+		public double percentile(double q) {
+			if (latencies.length == 0)
+				return 0;
+			int i = ( int ) Math.ceil( q * latencies.length ) - 1;
+			return latencies[Math.min( latencies.length - 1, Math.max( 0, i ) )] / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format( "%6d %9d %8d %12.1f %9.2f %9.2f %9.2f", concurrency, requests, failures,
+					throughput(), percentile( 0.5 ), percentile( 0.99 ), percentile( 0.999 ) );
+		}
+	}
+
+	/**
+	 * Runs the given number of lookups with the given number of concurrent workers.
+	 *
+	 * @param concurrency
+	 * @param count
+	 * @return the result
+	 * @throws InterruptedException
+	 */
+	public Result run(int concurrency, final int count) throws InterruptedException {
+		final long[] latencies = new long[count];
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+
+		ExecutorService workers = virtual
+				? WhoisExecutors.newVirtualThreadExecutor()
+				: Executors.newFixedThreadPool( concurrency );
+		long start = System.nanoTime();
+		for (int w = 0; w < concurrency; w++) {
+			workers.execute( new Runnable() {
+				@Override
+				public void run() {
+					int i;
+					while ((i = next.getAndIncrement()) < count) {
+						String domain = domains.get( i % domains.size() );
+						long t0 = System.nanoTime();
+						WhoisMap map = null;
+						try {
+							map = new WhoisEngine( domain, deepWhois ).build();
+						}
+						catch (RuntimeException e) {
+							map = null;
+						}
+						latencies[i] = System.nanoTime() - t0;
+						if (null == map || null == map.get( "rawdata" ))
+							failures.incrementAndGet();
+					}
+				}
+			} );
+		}
+		workers.shutdown();
+		workers.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+		return new Result( concurrency, failures.get(), System.nanoTime() - start, latencies );
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] levels = { 1, 8, 64 };
+		int count = 2000;
+		int warmup = 500;
+		String tlds = "com,net,de,ac";
+		File responses = new File( "bench/responses" );
+		Behavior.Latency latency = Behavior.Latency.NONE;
+		double throttle = 0;
+		double reset = 0;
+		int dripBytes = 0;
+		long dripDelay = 0;
+		boolean nio = false;
+		boolean virtual = false;
+		boolean deep = true;
+
+		for (int i = 0; i < args.length; i++) {
+			String a = args[i];
+			if ("-c".equals( a )) {
+				String[] ss = args[++i].split( "," );
+				levels = new int[ss.length];
+				for (int j = 0; j < ss.length; j++) {
+					levels[j] = Integer.parseInt( ss[j].trim() );
+				}
+			}
+			else if ("-n".equals( a ))
+				count = Integer.parseInt( args[++i] );
+			else if ("-warmup".equals( a ))
+				warmup = Integer.parseInt( args[++i] );
+			else if ("-tlds".equals( a ))
+				tlds = args[++i];
+			else if ("-responses".equals( a ))
+				responses = new File( args[++i] );
+			else if ("-latency".equals( a ))
+				latency = Behavior.Latency.parse( args[++i] );
+			else if ("-throttle".equals( a ))
+				throttle = Double.parseDouble( args[++i] );
+			else if ("-reset".equals( a ))
+				reset = Double.parseDouble( args[++i] );
+			else if ("-drip".equals( a )) {
+				String[] ss = args[++i].split( ":" );
+				dripBytes = Integer.parseInt( ss[0] );
+				dripDelay = (ss.length > 1) ? Long.parseLong( ss[1] ) : 0;
+			}
+			else if ("-nio".equals( a ))
+				nio = true;
+			else if ("-virtual".equals( a ))
+				virtual = true;
+			else if ("-shallow".equals( a ))
+				deep = false;
+			else {
+				System.err.println( "Unknown option: " + a );
+				System.exit( 2 );
+			}
+		}
+
+		WhoisFarm farm = new WhoisFarm();
+		if (responses.isDirectory())
+			farm.loadRecordings( responses );
+		farm.setDefaultBehavior( new Behavior( latency, throttle, reset, dripBytes, dripDelay ) );
+		farm.start();
+		farm.install( Math.max( 4, levels[levels.length - 1] ) );
+
+		RateLimiter limiter = Utility.getRateLimiter();
+		Utility.setRateLimiter( null );
+		NioTransport transport = nio ? new NioTransport( Runtime.getRuntime().availableProcessors() ) : null;
+		Utility.setNioTransport( transport );
+
+		List<String> domains = new ArrayList<String>();
+		String[] ts = tlds.split( "," );
+		for (int i = 0; i < 1000; i++) {
+			domains.add( "load" + i + "." + ts[i % ts.length].trim() );
+		}
+
+		// Throttles and resets are expected here; count the warnings instead of printing each one.
+		final AtomicInteger warnings = new AtomicInteger();
+		Utility.setLogger( new Logger() {
+			@Override
+			public void doLog(LEVEL lv, String info, Exception e) {
+				if (lv == LEVEL.ERROR)
+					System.err.println( info + e );
+				else if (lv == LEVEL.WARN)
+					warnings.incrementAndGet();
+			}
+		} );
+
+		System.out.println( farm.getHosts().size() + " virtual hosts, " + farm.getDefaultBehavior() + ", "
+				+ (nio ? "nio" : "blocking") + ", " + (virtual ? "virtual" : "platform") + " threads" );
+		try {
+			LoadDriver driver = new LoadDriver( domains, deep, virtual );
+			if (warmup > 0)
+				driver.run( levels[0], warmup );
+
+			System.out.println( String.format( "%6s %9s %8s %12s %9s %9s %9s", "conc", "requests", "failures",
+					"req/s", "p50 ms", "p99 ms", "p999 ms" ) );
+			for (int c : levels) {
+				farm.resetCounters();
+				warnings.set( 0 );
+				System.out.println( driver.run( c, count ) + "   (" + farm.getRequests() + " server requests, "
+						+ farm.getThrottled() + " throttled, " + farm.getResets() + " resets, " + warnings.get()
+						+ " client warnings)" );
+			}
+		}
+		finally {
+			if (null != transport)
+				transport.shutdown();
+			Utility.setNioTransport( null );
+			Utility.setRateLimiter( limiter );
+			farm.uninstall();
+			farm.stop();
+			Utility.setLogger( null );
+		}
+	}
+
+}
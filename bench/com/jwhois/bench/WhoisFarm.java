@@ -0,0 +1,741 @@
+package com.jwhois.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.jwhois.core.DnsResolver;
+import com.jwhois.core.HttpTransport;
+import com.jwhois.core.Utility;
+import com.jwhois.core.WhoisExecutors;
+
+/**
+ * Local stand-in for the WHOIS servers of the library, for load tests. Every server of WhoisServers.xml and every
+ * Translates entry of WhoisTranslates.xml becomes a virtual host: port-43 hosts get a listener on an own loopback port,
+ * web and RDAP hosts are served through one local HTTP proxy. Hosts answer with recorded responses ("{domain}" is
+ * replaced by the queried domain) and can be given a {@link Behavior}: latency, throttling, slow drip and connection
+ * resets.
+ *
+ * {@link #install()} points the library at the farm: a {@link DnsResolver} which maps the virtual hosts to their
+ * listeners and an {@link HttpTransport} which goes through the proxy.
+ */
+public class WhoisFarm {
+	private static final Charset			UTF8				= Charset.forName( "UTF-8" );
+	private static final String				SERVERS_DB			= "/com/jwhois/core/WhoisServers.xml";
+	private static final String				TRANSLATES_DB		= "/com/jwhois/core/WhoisTranslates.xml";
+	private static final int				BACKLOG				= 1024;
+	private static final int				READ_TIMEOUT		= 10 * 1000;
+	private static final int				MAX_HEADER			= 16 * 1024;
+	private static final String				THROTTLE_REPLY		= "%ERROR:201: access denied: query rate limit exceeded\r\n";
+	private static final String				DEFAULT_RESPONSE	= "Domain Name: {domain}\r\n"
+																		+ "Registrar: Example Registrar, Inc.\r\n"
+																		+ "Status: ok\r\n"
+																		+ "Creation Date: 2001-02-03\r\n"
+																		+ "Expiration Date: 2031-02-03\r\n"
+																		+ "Name Server: ns1.example.net\r\n"
+																		+ "Name Server: ns2.example.net\r\n";
+	private static final String				DEFAULT_RDAP		= "{\"objectClassName\":\"domain\",\"ldhName\":\"{domain}\",\n"
+																		+ "\"status\":[\"active\"],\n"
+																		+ "\"events\":[{\"eventAction\":\"registration\",\"eventDate\":\"2001-02-03T00:00:00Z\"},\n"
+																		+ "{\"eventAction\":\"expiration\",\"eventDate\":\"2031-02-03T00:00:00Z\"}],\n"
+																		+ "\"entities\":[{\"objectClassName\":\"entity\",\"roles\":[\"registrar\"],\n"
+																		+ "\"vcardArray\":[\"vcard\",[[\"version\",{},\"text\",\"4.0\"],\n"
+																		+ "[\"fn\",{},\"text\",\"Example Registrar, Inc.\"]]]}],\n"
+																		+ "\"nameservers\":[{\"objectClassName\":\"nameserver\",\"ldhName\":\"ns1.example.net\"},\n"
+																		+ "{\"objectClassName\":\"nameserver\",\"ldhName\":\"ns2.example.net\"}]}\n";
+	private static final Pattern			RDAP_ERROR			= Pattern.compile( "\"errorCode\"\\s*:\\s*(\\d{3})" );
+
+	private final InetAddress				loopback;
+	private final Map<String, VirtualHost>	hosts;
+	private final Map<String, String>		recordings;
+	private final Map<String, Behavior>		behaviors;
+	private final AtomicLong				requests;
+	private final AtomicLong				throttled;
+	private final AtomicLong				resets;
+	private volatile Behavior				defaultBehavior;
+
+	private Selector						selector;
+	private Thread							acceptor;
+	private ExecutorService					workers;
+	private ServerSocketChannel				httpServer;
+	private List<ServerSocketChannel>		servers;
+	private volatile boolean				running;
+
+	// The settings which install() replaced
+	private DnsResolver						oldResolver;
+	private HttpTransport					oldTransport;
+
+	/**
+	 * Creates the farm with one virtual host per server of the library's XML databases.
+	 *
+	 * @throws IOException
+	 *             if the databases cannot be read
+	 */
+	public WhoisFarm() throws IOException {
+		this.loopback = InetAddress.getByName( "127.0.0.1" );
+		this.hosts = new ConcurrentHashMap<String, VirtualHost>();
+		this.recordings = new ConcurrentHashMap<String, String>();
+		this.behaviors = new ConcurrentHashMap<String, Behavior>();
+		this.requests = new AtomicLong();
+		this.throttled = new AtomicLong();
+		this.resets = new AtomicLong();
+		this.defaultBehavior = Behavior.DIRECT;
+
+		try {
+			Document servers = parse( SERVERS_DB );
+			NodeList list = servers.getElementsByTagName( "SERVER" );
+			for (int i = 0; i < list.getLength(); i++) {
+				Element e = ( Element ) list.item( i );
+				String url = text( e, "URL" );
+				if (!"break".equals( url ) && !"common".equals( url ))
+					addServer( url );
+				if ("RedirectList".equals( e.getParentNode().getNodeName() ))
+					addHost( text( e, "KEY" ) );
+			}
+
+			Document translates = parse( TRANSLATES_DB );
+			list = translates.getElementsByTagName( "Translates" );
+			for (int i = 0; i < list.getLength(); i++) {
+				addHost( (( Element ) list.item( i )).getAttribute( "id" ) );
+			}
+		}
+		catch (IOException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IOException( "Cannot read the server databases", e );
+		}
+	}
+
+	/**
+	 * Adds a port-43 virtual host. Must be called before {@link #start()}.
+	 *
+	 * @param host
+	 */
+	public void addHost(String host) {
+		if (null == host || host.length() == 0)
+			return;
+		host = host.toLowerCase();
+		if (!hosts.containsKey( host ))
+			hosts.put( host, new VirtualHost( host, false, false ) );
+	}
+
+	/**
+	 * Adds the virtual host of a server entry: "host", "host?query template", a web URL template or "rdap:" and the
+	 * base URL of an RDAP server, which answers JSON.
+	 *
+	 * @param server
+	 */
+	public void addServer(String server) {
+		boolean rdap = server.regionMatches( true, 0, "rdap:", 0, 5 );
+		if (rdap) {
+			server = server.substring( 5 );
+			if (!server.contains( "{domain}" ) && !server.contains( "/domain/" ))
+				server += (server.endsWith( "/" ) ? "" : "/") + "domain/{domain}";
+		}
+		boolean web = server.startsWith( "http://" ) || server.startsWith( "https://" );
+		String addr = web ? server.substring( server.indexOf( "://" ) + 3 ) : server;
+		int end = addr.length();
+		for (char c : new char[] { '/', '?', ':' }) {
+			int pos = addr.indexOf( c );
+			if (pos > -1 && pos < end)
+				end = pos;
+		}
+		String host = addr.substring( 0, end ).toLowerCase();
+		if (host.length() == 0)
+			return;
+
+		VirtualHost vh = hosts.get( host );
+		if (null == vh || (web && !vh.web) || rdap != vh.rdap) {
+			vh = new VirtualHost( host, web, rdap );
+			hosts.put( host, vh );
+		}
+		if (web)
+			vh.addTemplate( server );
+		else if (end < addr.length() && addr.charAt( end ) == '?')
+			vh.addTemplate( addr.substring( end + 1 ) );
+	}
+
+	/**
+	 * Sets the recorded response of a host; "{domain}" is replaced by the queried domain. The host is added if it is
+	 * unknown.
+	 *
+	 * @param host
+	 * @param response
+	 */
+	public void record(String host, String response) {
+		host = host.toLowerCase();
+		addHost( host );
+		recordings.put( host, response );
+	}
+
+	/**
+	 * Loads the recordings of a directory: the file "&lt;host&gt;.txt" holds the response of the host.
+	 *
+	 * @param dir
+	 * @return the number of recordings loaded
+	 * @throws IOException
+	 */
+	public int loadRecordings(File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (null == files)
+			throw new IOException( "Not a directory: " + dir );
+		int n = 0;
+		for (File f : files) {
+			String name = f.getName();
+			if (!f.isFile() || !name.endsWith( ".txt" ))
+				continue;
+			InputStream in = new FileInputStream( f );
+			try {
+				record( name.substring( 0, name.length() - 4 ), new String( readAll( in ), UTF8 ) );
+				n++;
+			}
+			finally {
+				in.close();
+			}
+		}
+		return n;
+	}
+
+	public void setBehavior(String host, Behavior b) {
+		if (null == b)
+			behaviors.remove( host.toLowerCase() );
+		else
+			behaviors.put( host.toLowerCase(), b );
+	}
+
+	public void setDefaultBehavior(Behavior b) {
+		defaultBehavior = (null == b) ? Behavior.DIRECT : b;
+	}
+
+	public Behavior getDefaultBehavior() {
+		return defaultBehavior;
+	}
+
+	public Set<String> getHosts() {
+		return Collections.unmodifiableSet( new TreeSet<String>( hosts.keySet() ) );
+	}
+
+	public boolean hasHost(String host) {
+		return hosts.containsKey( host.toLowerCase() );
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getThrottled() {
+		return throttled.get();
+	}
+
+	public long getResets() {
+		return resets.get();
+	}
+
+	public void resetCounters() {
+		requests.set( 0 );
+		throttled.set( 0 );
+		resets.set( 0 );
+	}
+
+	/**
+	 * @return the port of the HTTP proxy which serves the web hosts
+	 */
+	public int getHttpPort() {
+		return httpServer.socket().getLocalPort();
+	}
+
+	/**
+	 * @param host
+	 * @return the port of a port-43 virtual host, -1 if there is none
+	 */
+	public int getPort(String host) {
+		VirtualHost vh = hosts.get( host.toLowerCase() );
+		return (null == vh || null == vh.server) ? -1 : vh.server.socket().getLocalPort();
+	}
+
+	/**
+	 * Opens the listeners of all virtual hosts.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void start() throws IOException {
+		if (running)
+			return;
+		selector = Selector.open();
+		servers = new ArrayList<ServerSocketChannel>();
+		workers = WhoisExecutors.newVirtualThreadExecutor();
+
+		httpServer = listen( null );
+		for (VirtualHost vh : hosts.values()) {
+			if (!vh.web)
+				vh.server = listen( vh );
+		}
+
+		running = true;
+		acceptor = new Thread( new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "whois-farm-acceptor" );
+		acceptor.setDaemon( true );
+		acceptor.start();
+	}
+
+	/**
+	 * Closes all listeners. Connections being served run to their end.
+	 */
+	public synchronized void stop() {
+		if (!running)
+			return;
+		running = false;
+		selector.wakeup();
+		try {
+			acceptor.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (ServerSocketChannel s : servers) {
+			close( s );
+		}
+		for (VirtualHost vh : hosts.values()) {
+			vh.server = null;
+		}
+		workers.shutdown();
+	}
+
+	/**
+	 * Points the library at the farm; {@link #uninstall()} restores the replaced settings.
+	 *
+	 * @param maxPerHost
+	 *            the connections per web host of the installed HTTP transport
+	 */
+	public synchronized void install(int maxPerHost) {
+		if (null == oldResolver) {
+			oldResolver = Utility.getResolver();
+			oldTransport = Utility.getHttpTransport();
+		}
+		Utility.setResolver( new FarmResolver() );
+		Utility.setHttpTransport( new HttpTransport( maxPerHost, new Proxy( Proxy.Type.HTTP, new InetSocketAddress(
+				loopback, getHttpPort() ) ) ) );
+	}
+
+	public void install() {
+		install( new HttpTransport().getMaxPerHost() );
+	}
+
+	public synchronized void uninstall() {
+		if (null == oldResolver)
+			return;
+		Utility.setResolver( oldResolver );
+		Utility.setHttpTransport( oldTransport );
+		oldResolver = null;
+		oldTransport = null;
+	}
+
+	private ServerSocketChannel listen(VirtualHost vh) throws IOException {
+		ServerSocketChannel s = ServerSocketChannel.open();
+		servers.add( s );
+		s.socket().bind( new InetSocketAddress( loopback, 0 ), BACKLOG );
+		s.configureBlocking( false );
+		s.register( selector, SelectionKey.OP_ACCEPT, vh );
+		return s;
+	}
+
+	private void accept() {
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					final SocketChannel ch = (( ServerSocketChannel ) key.channel()).accept();
+					if (null == ch)
+						continue;
+					final VirtualHost vh = ( VirtualHost ) key.attachment();
+					workers.execute( new Runnable() {
+						@Override
+						public void run() {
+							serve( ch, vh );
+						}
+					} );
+				}
+			}
+		}
+		catch (IOException e) {
+			Utility.logWarn( "WhoisFarm::accept IOException: ", e );
+		}
+		finally {
+			try {
+				selector.close();
+			}
+			catch (IOException e) {
+				// do nothing
+			}
+		}
+	}
+
+	private void serve(SocketChannel ch, VirtualHost vh) {
+		Socket sock = ch.socket();
+		try {
+			sock.setSoTimeout( READ_TIMEOUT );
+			sock.setTcpNoDelay( true );
+			if (null == vh)
+				serveHttp( sock );
+			else
+				serveWhois( sock, vh );
+		}
+		catch (IOException e) {
+			// the client went away
+		}
+		finally {
+			close( ch );
+		}
+	}
+
+	private void serveWhois(Socket sock, VirtualHost vh) throws IOException {
+		InputStream in = sock.getInputStream();
+		String query = readLine( in );
+		if (null == query)
+			return;
+
+		Random random = ThreadLocalRandom.current();
+		Behavior b = behavior( vh.host );
+		requests.incrementAndGet();
+		sleep( b.getLatency().sample( random ) );
+
+		OutputStream out = sock.getOutputStream();
+		if (random.nextDouble() < b.getThrottleRate()) {
+			throttled.incrementAndGet();
+			out.write( THROTTLE_REPLY.getBytes( UTF8 ) );
+			return;
+		}
+
+		byte[] body = response( vh.host, vh.domain( query.trim() ) ).getBytes( UTF8 );
+		if (random.nextDouble() < b.getResetRate()) {
+			reset( sock, out, body, random );
+			return;
+		}
+		write( out, body, 0, body.length, b );
+	}
+
+	private void serveHttp(Socket sock) throws IOException {
+		InputStream in = sock.getInputStream();
+		OutputStream out = sock.getOutputStream();
+		Random random = ThreadLocalRandom.current();
+
+		// Keep-alive: serve requests until the client closes the connection.
+		for (;;) {
+			String requestLine = readLine( in );
+			if (null == requestLine)
+				return;
+			if (requestLine.length() == 0)
+				continue;
+
+			boolean gzip = false;
+			boolean keepAlive = true;
+			int headerSize = 0;
+			String header = null;
+			while ((header = readLine( in )) != null && header.length() > 0) {
+				headerSize += header.length();
+				if (headerSize > MAX_HEADER)
+					return;
+				String h = header.toLowerCase();
+				if (h.startsWith( "accept-encoding:" ) && h.contains( "gzip" ))
+					gzip = true;
+				else if (h.startsWith( "connection:" ) && h.contains( "close" ))
+					keepAlive = false;
+				else if (h.startsWith( "proxy-connection:" ) && h.contains( "close" ))
+					keepAlive = false;
+			}
+			if (null == header)
+				return;
+
+			String[] parts = requestLine.split( " " );
+			String target = (parts.length > 1) ? parts[1] : "";
+			VirtualHost vh = hosts.get( hostOf( target ) );
+			if (null == vh) {
+				reply( out, 404, "Not Found", "text/plain", "no such host\r\n".getBytes( UTF8 ), false, null );
+				continue;
+			}
+
+			Behavior b = behavior( vh.host );
+			requests.incrementAndGet();
+			sleep( b.getLatency().sample( random ) );
+
+			if (random.nextDouble() < b.getThrottleRate()) {
+				throttled.incrementAndGet();
+				reply( out, 429, "Too Many Requests", "text/plain", THROTTLE_REPLY.getBytes( UTF8 ), false, null );
+				continue;
+			}
+
+			String text = response( vh.host, vh.domain( target ) );
+			byte[] body = vh.rdap ? text.getBytes( UTF8 ) : ("<html><body><pre>\r\n" + text
+					+ "</pre></body></html>\r\n").getBytes( UTF8 );
+			if (random.nextDouble() < b.getResetRate()) {
+				reset( sock, out, body, random );
+				return;
+			}
+			if (vh.rdap) {
+				// An error answer carries its status, a domain not found is a 404.
+				Matcher m = RDAP_ERROR.matcher( text );
+				int status = m.find() ? Integer.parseInt( m.group( 1 ) ) : 200;
+				reply( out, status, (200 == status) ? "OK" : "Error", "application/rdap+json", body, gzip, b );
+			}
+			else {
+				reply( out, 200, "OK", "text/html; charset=utf-8", body, gzip, b );
+			}
+			if (!keepAlive)
+				return;
+		}
+	}
+
+	private void reply(OutputStream out, int status, String reason, String type, byte[] body, boolean gzip,
+			Behavior b) throws IOException {
+		if (gzip) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			GZIPOutputStream z = new GZIPOutputStream( bytes );
+			z.write( body );
+			z.close();
+			body = bytes.toByteArray();
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append( "HTTP/1.1 " ).append( status ).append( ' ' ).append( reason ).append( "\r\n" );
+		sb.append( "Content-Type: " ).append( type ).append( "\r\n" );
+		sb.append( "Content-Length: " ).append( body.length ).append( "\r\n" );
+		if (gzip)
+			sb.append( "Content-Encoding: gzip\r\n" );
+		sb.append( "\r\n" );
+		out.write( sb.toString().getBytes( UTF8 ) );
+		if (null == b)
+			out.write( body );
+		else
+			write( out, body, 0, body.length, b );
+		out.flush();
+	}
+
+	// Sends a part of the response, then resets the connection.
+	private void reset(Socket sock, OutputStream out, byte[] body, Random random) throws IOException {
+		resets.incrementAndGet();
+		out.write( body, 0, random.nextInt( body.length + 1 ) );
+		out.flush();
+		sock.setSoLinger( true, 0 );
+	}
+
+	private void write(OutputStream out, byte[] body, int off, int len, Behavior b) throws IOException {
+		int chunk = b.getDripBytes();
+		if (chunk <= 0) {
+			out.write( body, off, len );
+			return;
+		}
+		for (int pos = off; pos < off + len; pos += chunk) {
+			if (pos > off)
+				sleep( b.getDripDelay() );
+			out.write( body, pos, Math.min( chunk, off + len - pos ) );
+			out.flush();
+		}
+	}
+
+	private Behavior behavior(String host) {
+		Behavior b = behaviors.get( host );
+		return (null != b) ? b : defaultBehavior;
+	}
+
+	private String response(String host, String domain) {
+		String r = recordings.get( host );
+		if (null == r)
+			r = hosts.get( host ).rdap ? DEFAULT_RDAP : DEFAULT_RESPONSE;
+		return r.replace( "{domain}", domain );
+	}
+
+	private static String hostOf(String target) {
+		int pos = target.indexOf( "://" );
+		String s = (pos > -1) ? target.substring( pos + 3 ) : target;
+		int end = s.length();
+		for (char c : new char[] { '/', '?', ':' }) {
+			int p = s.indexOf( c );
+			if (p > -1 && p < end)
+				end = p;
+		}
+		return s.substring( 0, end ).toLowerCase();
+	}
+
+	// A line of ASCII/UTF-8 text, without its line end. Null at the end of the stream.
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream( 128 );
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\n')
+				break;
+			if (line.size() >= MAX_HEADER)
+				throw new IOException( "Line too long" );
+			line.write( c );
+		}
+		if (c == -1 && line.size() == 0)
+			return null;
+		String s = new String( line.toByteArray(), UTF8 );
+		return s.endsWith( "\r" ) ? s.substring( 0, s.length() - 1 ) : s;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read( buf )) != -1) {
+			out.write( buf, 0, n );
+		}
+		return out.toByteArray();
+	}
+
+	private static void sleep(long ms) {
+		if (ms <= 0)
+			return;
+		try {
+			Thread.sleep( ms );
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void close(Closeable c) {
+		try {
+			c.close();
+		}
+		catch (IOException e) {
+			// do nothing
+		}
+	}
+
+	private static Document parse(String resource) throws Exception {
+		InputStream in = WhoisFarm.class.getResourceAsStream( resource );
+		if (null == in)
+			throw new IOException( "Missing resource: " + resource );
+		try {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( in );
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static String text(Element e, String tag) {
+		NodeList list = e.getElementsByTagName( tag );
+		return (list.getLength() > 0) ? list.item( 0 ).getTextContent().trim() : "";
+	}
+
+	/**
+	 * A server of the farm, with the query templates of its server entries.
+	 */
+	private static class VirtualHost {
+		final String					host;
+		final boolean					web;
+		final boolean					rdap;
+		final List<Pattern>				templates;
+		volatile ServerSocketChannel	server;
+
+		VirtualHost(String host, boolean web, boolean rdap) {
+			this.host = host;
+			this.web = web;
+			this.rdap = rdap;
+			this.templates = new ArrayList<Pattern>();
+		}
+
+		void addTemplate(String template) {
+			StringBuilder sb = new StringBuilder();
+			Matcher m = Pattern.compile( "\\{(domain|tld)\\}" ).matcher( template );
+			int pos = 0;
+			while (m.find()) {
+				sb.append( Pattern.quote( template.substring( pos, m.start() ) ) );
+				sb.append( "domain".equals( m.group( 1 ) ) ? "(.+?)" : ".*?" );
+				pos = m.end();
+			}
+			sb.append( Pattern.quote( template.substring( pos ) ) );
+			templates.add( Pattern.compile( sb.toString(), Pattern.CASE_INSENSITIVE ) );
+		}
+
+		/**
+		 * @param query
+		 *            the query line or the requested URL
+		 * @return the queried domain
+		 */
+		String domain(String query) {
+			for (Pattern p : templates) {
+				Matcher m = p.matcher( query );
+				if (m.matches())
+					return m.group( 1 );
+			}
+			// Most servers are asked with the bare domain, or with it as the last word.
+			String[] words = query.split( "[\\s=/?&]+" );
+			return (words.length > 0) ? words[words.length - 1] : query;
+		}
+	}
+
+	/**
+	 * Resolves the virtual hosts to their listeners; the web hosts are reached through the proxy and only need to
+	 * resolve. Other hosts do not exist.
+	 */
+	private class FarmResolver extends DnsResolver {
+		FarmResolver() {
+			super( Long.MAX_VALUE, Long.MAX_VALUE );
+		}
+
+		@Override
+		protected InetAddress[] getAllByName(String host) throws UnknownHostException {
+			if (!hasHost( host ))
+				throw new UnknownHostException( host );
+			return new InetAddress[] { loopback };
+		}
+
+		@Override
+		public CompletableFuture<InetSocketAddress[]> resolveAsync(String host, int port) {
+			CompletableFuture<InetSocketAddress[]> f = new CompletableFuture<InetSocketAddress[]>();
+			int p = getPort( host );
+			if (p < 0)
+				f.completeExceptionally( new UnknownHostException( host ) );
+			else
+				f.complete( new InetSocketAddress[] { new InetSocketAddress( loopback, p ) } );
+			return f;
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package com.jwhois.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput and allocation benchmarks of the parse, translate and serialize paths, run over the recorded rawdata of
+ * bench/corpus (one file per server, named after its Translates id; blank lines are dropped like the client does).
+ *
+ * Stages per sample:
+ * <ul>
+ * <li>parse - WhoisMap.parse: parseA/B/C and the translation into the result map</li>
+ * <li>setGet - WhoisMap.set and get of every path of the parsed result</li>
+ * <li>append - WhoisMap.set with append, i.e. addValue, of every list value of the parsed result</li>
+ * <li>json - JSONParser.toJSONString of the parsed result</li>
+ * </ul>
+ *
+ * Run from the root of the repository, the allocation per op comes with the gc profiler:
+ *
+ * <pre>
+ * mvn -f bench/jmh/pom.xml package
+ * java -jar bench/jmh/target/benchmarks.jar -prof gc [-p sample=whois.nic.at] [ParseBenchmark.parse]
+ * </pre>
+ *
+ * The corpus is found elsewhere with -jvmArgs -Djwhois.corpus=&lt;dir&gt;.
+ */
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+	@Param({ "com.whois-servers.net", "whois.dns.com.cn", "whois.nic.at", "whois.nic.cz" })
+	public String				sample;
+
+	private List<String>		rawdata;
+	private WhoisMap			parsed;
+	private Map<String, Object>	paths;
+
+	@Setup
+	public void setup() throws IOException {
+		File corpus = new File( System.getProperty( "jwhois.corpus", "bench/corpus" ) );
+		rawdata = readCorpus( new File( corpus, sample + ".txt" ) );
+		parsed = parse();
+		paths = new LinkedHashMap<String, Object>();
+		flatten( "", parsed.getMap(), paths );
+	}
+
+	@Benchmark
+	public WhoisMap parse() {
+		WhoisMap map = new WhoisMap();
+		map.set( "rawdata", rawdata );
+		map.parse( sample );
+		return map;
+	}
+
+	@Benchmark
+	public WhoisMap setGet(Blackhole bh) {
+		WhoisMap map = new WhoisMap();
+		for (Map.Entry<String, Object> e : paths.entrySet()) {
+			map.set( e.getKey(), e.getValue() );
+		}
+		for (String path : paths.keySet()) {
+			bh.consume( map.get( path ) );
+		}
+		return map;
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public WhoisMap append() {
+		WhoisMap map = new WhoisMap();
+		for (Map.Entry<String, Object> e : paths.entrySet()) {
+			if (!(e.getValue() instanceof List))
+				continue;
+			List<String> values = ( List<String> ) e.getValue();
+			if (values.isEmpty())
+				continue;
+			map.set( e.getKey(), values.get( 0 ) );
+			for (int i = 1; i < values.size(); i++) {
+				map.set( e.getKey(), values.get( i ), true );
+			}
+		}
+		return map;
+	}
+
+	@Benchmark
+	public String json() {
+		return parsed.getJSON();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void flatten(String prefix, Map<String, Object> map, Map<String, Object> paths) {
+		for (Map.Entry<String, Object> e : map.entrySet()) {
+			if ("rawdata".equals( e.getKey() ))
+				continue;
+			String path = prefix + e.getKey();
+			if (e.getValue() instanceof Map)
+				flatten( path + ".", ( Map<String, Object> ) e.getValue(), paths );
+			else
+				paths.put( path, e.getValue() );
+		}
+	}
+
+	private static List<String> readCorpus(File f) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader br = new BufferedReader( new InputStreamReader( new FileInputStream( f ), "UTF-8" ) );
+		try {
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				if (!Utility.isEmpty( line ))
+					lines.add( line );
+			}
+		}
+		finally {
+			br.close();
+		}
+		return lines;
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.jwhois.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares one instance of the values which repeat across records: registrar names, name servers, statuses, and the
+ * servers of regyinfo. The parse passes the values of those fields through {@link #canonical(String)}, so the maps
+ * kept by a cache point to one String per distinct value instead of one per record.
+ *
+ * The table is bounded: once it holds the maximum number of values it is emptied, and the values met from then on
+ * fill it again. Hits and misses are counted to tell whether it pays.
+ *
+ * Install it with {@link Utility#setCanonicalizer(Canonicalizer)}.
+ */
+public class Canonicalizer {
+	private static final int						DEFAULT_MAX_SIZE	= 65536;
+
+	private final int								maxSize;
+	private final ConcurrentMap<String, String>		table;
+	private final LongAdder							hits				= new LongAdder();
+	private final LongAdder							misses				= new LongAdder();
+
+	public Canonicalizer() {
+		this( DEFAULT_MAX_SIZE );
+	}
+
+	/**
+	 * @param maxSize
+	 *            the number of values kept at most
+	 */
+	public Canonicalizer(int maxSize) {
+		this.maxSize = Math.max( 1, maxSize );
+		this.table = new ConcurrentHashMap<String, String>();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param value
+	 * @return the instance kept for an equal value, the value itself if it is the first one; null for null
+	 */
+	public String canonical(String value) {
+		if (null == value)
+			return null;
+
+		String ret = table.get( value );
+		if (null != ret) {
+			hits.increment();
+			return ret;
+		}
+
+		misses.increment();
+		if (table.size() >= maxSize)
+			table.clear();
+		ret = table.putIfAbsent( value, value );
+		return (null == ret) ? value : ret;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the share of the values found in the table, 0 before any
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return (total == 0) ? 0 : ( double ) h / total;
+	}
+
+	/**
+	 * @return the number of values in the table
+	 */
+	public int size() {
+		return table.size();
+	}
+
+	/**
+	 * Drops all values and resets the counters.
+	 */
+	public void clear() {
+		table.clear();
+		hits.reset();
+		misses.reset();
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.jwhois.core;
+
+import java.text.ParsePosition;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Locale;
+
+/**
+ * Turns the dates of the registries into epoch milliseconds. The formats are compiled once and shared, a
+ * DateTimeFormatter being thread-safe. A date without a zone is taken as UTC, a date without a time as its start.
+ *
+ * The formats are tested in turn with parseUnresolved, which stops at the first character that does not fit, so
+ * detecting a format costs no exception. Day and month orders that can not be told apart (01/02/2010) follow the
+ * dateorder attribute of the server, day first if none; the dates parsed before never decide it.
+ */
+final class DateNormalizer {
+	static final long				NONE	= Long.MIN_VALUE;
+
+	private static final Format[]	FORMATS	= {
+			new Format( DateTimeFormatter.ISO_OFFSET_DATE_TIME, null ),
+			new Format( DateTimeFormatter.ISO_LOCAL_DATE_TIME, null ),
+			new Format( "uuuu-M-d[ HH:mm[:ss][.SSS]][ z]", null ),
+			new Format( "d-MMM-uuuu[ HH:mm[:ss]][ z]", null ),
+			new Format( "d MMM uuuu[ HH:mm[:ss]][ z]", null ),
+			new Format( "d.M.uuuu[ HH:mm[:ss]][ z]", null ),
+			new Format( "uuuuMMdd[ HH:mm[:ss]][ z]", null ),
+			new Format( "uuuu.M.d[ HH:mm[:ss]][ z]", null ),
+			new Format( "uuuu/M/d[ HH:mm[:ss]][ z]", null ),
+			new Format( "d/M/uuuu[ HH:mm[:ss]][ z]", "dmy" ),
+			new Format( "M/d/uuuu[ HH:mm[:ss]][ z]", "mdy" ),
+			new Format( "EEE MMM d HH:mm:ss z uuuu", null ),
+			new Format( "MMMM d uuuu", null ) };
+
+	private DateNormalizer() {
+	}
+
+	/**
+	 * @param value
+	 *            The date as given by the registry.
+	 * @param profile
+	 *            The profile of the server, giving its day and month order.
+	 * @return The epoch milliseconds, NONE if the value is not a known date.
+	 */
+	static long toMillis(String value, ServerProfile profile) {
+		if (Utility.isEmpty( value ))
+			return NONE;
+
+		String text = value.trim();
+		if (text.endsWith( "." ))
+			text = text.substring( 0, text.length() - 1 ).trim();
+
+		String order = profile.getDateOrder();
+		for (Format f : FORMATS) {
+			if (null != order && null != f.order && !order.equals( f.order ))
+				continue;
+			long ret = parse( f, text );
+			if (ret != NONE)
+				return ret;
+		}
+		return NONE;
+	}
+
+	private static long parse(Format format, String text) {
+		ParsePosition pos = new ParsePosition( 0 );
+		if (null == format.formatter.parseUnresolved( text, pos ) || pos.getErrorIndex() >= 0
+				|| pos.getIndex() != text.length())
+			return NONE;
+		return resolve( format, text );
+	}
+
+	private static long resolve(Format format, String text) {
+		TemporalAccessor t;
+		try {
+			t = format.formatter.parse( text );
+		}
+		catch (DateTimeParseException e) {
+			// not in the format, or not a date (31.02.2010)
+			return NONE;
+		}
+
+		if (t.isSupported( ChronoField.INSTANT_SECONDS )) {
+			long ret = t.getLong( ChronoField.INSTANT_SECONDS ) * 1000;
+			if (t.isSupported( ChronoField.MILLI_OF_SECOND ))
+				ret += t.getLong( ChronoField.MILLI_OF_SECOND );
+			return ret;
+		}
+
+		LocalDate date = t.query( TemporalQueries.localDate() );
+		if (null == date)
+			return NONE;
+		LocalTime time = t.query( TemporalQueries.localTime() );
+		return date.atTime( (null == time) ? LocalTime.MIDNIGHT : time ).toInstant( ZoneOffset.UTC ).toEpochMilli();
+	}
+
+	private static class Format {
+		private final DateTimeFormatter	formatter;
+		// the day and month order of the format, null if not ambiguous
+		private final String			order;
+
+		Format(DateTimeFormatter formatter, String order) {
+			this.formatter = formatter;
+			this.order = order;
+		}
+
+		Format(String pattern, String order) {
+			this( new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern( pattern ).toFormatter(
+					Locale.ENGLISH ).withResolverStyle( ResolverStyle.STRICT ), order );
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+package com.jwhois.core;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Caching host name resolver of the library. Answers are kept for a positive TTL, failures for a negative TTL, and
+ * concurrent lookups of the same host share one resolver call. Lookups run on the DNS threads of
+ * {@link WhoisExecutors}, so several hosts can be resolved in parallel with {@link #resolveAsync(String)}.
+ *
+ * The JDK does not expose the TTL of DNS records; by default the TTLs are read from the
+ * <code>networkaddress.cache.ttl</code> and <code>networkaddress.cache.negative.ttl</code> security properties, the
+ * same settings which drive the cache of InetAddress.
+ *
+ * Install it with {@link Utility#setResolver(DnsResolver)}.
+ */
+public class DnsResolver {
+	private static final long								DEFAULT_TTL				= 30 * 1000;
+	private static final long								DEFAULT_NEGATIVE_TTL	= 10 * 1000;
+	private static final int								MAX_ENTRIES				= 4096;
+
+	private final long										ttl;
+	private final long										negativeTtl;
+	private final ConcurrentMap<String, Entry>				cache;
+	private final ConcurrentMap<String, CompletableFuture<InetAddress[]>>	pending;
+
+	public DnsResolver() {
+		this( readTtl( "networkaddress.cache.ttl", DEFAULT_TTL ), readTtl( "networkaddress.cache.negative.ttl",
+				DEFAULT_NEGATIVE_TTL ) );
+	}
+
+	/**
+	 * @param ttl
+	 *            milliseconds an answer is kept, 0 for no caching, Long.MAX_VALUE for ever
+	 * @param negativeTtl
+	 *            milliseconds a failed lookup is kept
+	 */
+	public DnsResolver(long ttl, long negativeTtl) {
+		this.ttl = Math.max( 0, ttl );
+		this.negativeTtl = Math.max( 0, negativeTtl );
+		this.cache = new ConcurrentHashMap<String, Entry>();
+		this.pending = new ConcurrentHashMap<String, CompletableFuture<InetAddress[]>>();
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	public long getNegativeTtl() {
+		return negativeTtl;
+	}
+
+	/**
+	 * Resolves a host name, from the cache when possible.
+	 *
+	 * @param host
+	 * @return all addresses of the host, in the order of the system resolver
+	 * @throws UnknownHostException
+	 */
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+		String key = host.toLowerCase();
+		Entry e = cache.get( key );
+		if (null != e && !e.isExpired( System.currentTimeMillis() )) {
+			if (null == e.addrs)
+				throw new UnknownHostException( host );
+			return e.addrs.clone();
+		}
+
+		try {
+			return lookup( key ).get().clone();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new UnknownHostException( host );
+		}
+		catch (ExecutionException ee) {
+			if (ee.getCause() instanceof UnknownHostException)
+				throw ( UnknownHostException ) ee.getCause();
+			throw new UnknownHostException( host );
+		}
+	}
+
+	/**
+	 * Resolves the socket addresses of a server, in connect order.
+	 *
+	 * @param host
+	 * @param port
+	 * @return the addresses to connect
+	 * @throws UnknownHostException
+	 */
+	public InetSocketAddress[] resolve(String host, int port) throws UnknownHostException {
+		try {
+			return resolve( host, port, Long.MAX_VALUE );
+		}
+		catch (UnknownHostException e) {
+			throw e;
+		}
+		catch (IOException e) {
+			throw new UnknownHostException( host );
+		}
+	}
+
+	/**
+	 * Resolves the socket addresses of a server, in connect order, waiting no longer than a deadline: a resolver which
+	 * hangs must not outlast the budget of the lookup.
+	 *
+	 * @param host
+	 * @param port
+	 * @param deadline
+	 *            the time in milliseconds when the wait ends
+	 * @return the addresses to connect
+	 * @throws UnknownHostException
+	 *             if the host has no address
+	 * @throws SocketTimeoutException
+	 *             if the deadline passed first
+	 */
+	public InetSocketAddress[] resolve(String host, int port, long deadline) throws IOException {
+		long left = deadline - System.currentTimeMillis();
+		try {
+			if (left > 0)
+				return resolveAsync( host, port ).get( left, TimeUnit.MILLISECONDS );
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new UnknownHostException( host );
+		}
+		catch (ExecutionException ee) {
+			if (ee.getCause() instanceof UnknownHostException)
+				throw ( UnknownHostException ) ee.getCause();
+			throw new UnknownHostException( host );
+		}
+		catch (TimeoutException te) {
+			// fall through
+		}
+		throw new SocketTimeoutException( "Resolving " + host + " timed out" );
+	}
+
+	/**
+	 * Starts resolving a host name without waiting for it.
+	 *
+	 * @param host
+	 * @return the future addresses; it fails with UnknownHostException if the host has none
+	 */
+	public CompletableFuture<InetAddress[]> resolveAsync(String host) {
+		String key = host.toLowerCase();
+		Entry e = cache.get( key );
+		if (null != e && !e.isExpired( System.currentTimeMillis() )) {
+			CompletableFuture<InetAddress[]> f = new CompletableFuture<InetAddress[]>();
+			if (null == e.addrs)
+				f.completeExceptionally( new UnknownHostException( host ) );
+			else
+				f.complete( e.addrs.clone() );
+			return f;
+		}
+		return lookup( key ).thenApply( new Function<InetAddress[], InetAddress[]>() {
+			@Override
+			public InetAddress[] apply(InetAddress[] addrs) {
+				return addrs.clone();
+			}
+		} );
+	}
+
+	/**
+	 * Starts resolving the socket addresses of a server, in connect order. Subclasses may redirect servers here, e.g. to
+	 * a local stand-in.
+	 *
+	 * @param host
+	 * @param port
+	 * @return the future addresses to connect; it fails with UnknownHostException if the host has none
+	 */
+	public CompletableFuture<InetSocketAddress[]> resolveAsync(String host, final int port) {
+		return resolveAsync( host ).thenApply( new Function<InetAddress[], InetSocketAddress[]>() {
+			@Override
+			public InetSocketAddress[] apply(InetAddress[] addrs) {
+				return HappyEyeballs.order( addrs, port );
+			}
+		} );
+	}
+
+	/**
+	 * Drops all cached answers.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * The uncached resolver call, run on the DNS threads.
+	 *
+	 * @param host
+	 * @return all addresses of the host
+	 * @throws UnknownHostException
+	 */
+	protected InetAddress[] getAllByName(String host) throws UnknownHostException {
+		return InetAddress.getAllByName( host );
+	}
+
+	private CompletableFuture<InetAddress[]> lookup(final String key) {
+		CompletableFuture<InetAddress[]> f = pending.get( key );
+		if (null != f)
+			return f;
+
+		final CompletableFuture<InetAddress[]> created = new CompletableFuture<InetAddress[]>();
+		f = pending.putIfAbsent( key, created );
+		if (null != f)
+			return f;
+
+		WhoisExecutors.dnsExecutor().execute( new Runnable() {
+			@Override
+			public void run() {
+				InetAddress[] addrs = null;
+				try {
+					addrs = getAllByName( key );
+				}
+				catch (UnknownHostException e) {
+					store( key, null );
+					pending.remove( key );
+					created.completeExceptionally( e );
+					return;
+				}
+				store( key, addrs );
+				pending.remove( key );
+				created.complete( addrs );
+			}
+		} );
+		return created;
+	}
+
+	private void store(String key, InetAddress[] addrs) {
+		long keep = (null != addrs) ? ttl : negativeTtl;
+		if (keep <= 0)
+			return;
+
+		long now = System.currentTimeMillis();
+		if (cache.size() >= MAX_ENTRIES) {
+			Iterator<Entry> it = cache.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().isExpired( now ))
+					it.remove();
+			}
+			// Still full of live answers: the one which expires first makes room, the hot hosts stay.
+			if (cache.size() >= MAX_ENTRIES)
+				evictFirstExpiring();
+		}
+		long expires = (keep == Long.MAX_VALUE || now > Long.MAX_VALUE - keep) ? Long.MAX_VALUE : now + keep;
+		cache.put( key, new Entry( addrs, expires ) );
+	}
+
+	private void evictFirstExpiring() {
+		Map.Entry<String, Entry> first = null;
+		for (Map.Entry<String, Entry> e : cache.entrySet()) {
+			if (null == first || e.getValue().expires < first.getValue().expires)
+				first = e;
+		}
+		if (null != first)
+			cache.remove( first.getKey(), first.getValue() );
+	}
+
+	private static long readTtl(String property, long def) {
+		try {
+			String v = Security.getProperty( property );
+			if (null == v)
+				return def;
+			long sec = Long.parseLong( v.trim() );
+			if (sec < 0)
+				return Long.MAX_VALUE;
+			return sec * 1000;
+		}
+		catch (Exception e) {
+			return def;
+		}
+	}
+
+	private static class Entry {
+		final InetAddress[]	addrs;
+		final long			expires;
+
+		Entry(InetAddress[] addrs, long expires) {
+			this.addrs = addrs;
+			this.expires = expires;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expires;
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.jwhois.core;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Connects to a host with several addresses the happy eyeballs way (RFC 8305): IPv6 and IPv4 addresses are tried in
+ * turns, a further attempt starts every {@link #ATTEMPT_DELAY} milliseconds while the earlier ones are still pending,
+ * and the first connection established wins. All other attempts are closed.
+ */
+final class HappyEyeballs {
+	static final long					ATTEMPT_DELAY	= 250;
+
+	private final InetSocketAddress[]	addrs;
+	private volatile Selector			selector;
+	private volatile boolean			cancelled;
+
+	HappyEyeballs(InetSocketAddress[] addrs) {
+		this.addrs = addrs;
+	}
+
+	/**
+	 * Puts the addresses of a host into connect order: the families take turns, starting with the family of the first
+	 * address, so the preference of the system resolver is kept.
+	 *
+	 * @param addrs
+	 * @param port
+	 * @return the socket addresses
+	 */
+	static InetSocketAddress[] order(InetAddress[] addrs, int port) {
+		InetSocketAddress[] ordered = new InetSocketAddress[addrs.length];
+		if (addrs.length == 0)
+			return ordered;
+
+		List<InetAddress> first = new ArrayList<InetAddress>();
+		List<InetAddress> second = new ArrayList<InetAddress>();
+		boolean v6 = addrs[0] instanceof Inet6Address;
+		for (InetAddress a : addrs) {
+			if ((a instanceof Inet6Address) == v6)
+				first.add( a );
+			else
+				second.add( a );
+		}
+
+		int n = 0;
+		for (int i = 0; n < ordered.length; i++) {
+			if (i < first.size())
+				ordered[n++] = new InetSocketAddress( first.get( i ), port );
+			if (i < second.size())
+				ordered[n++] = new InetSocketAddress( second.get( i ), port );
+		}
+		return ordered;
+	}
+
+	/**
+	 * Races the connects.
+	 *
+	 * @param timeout
+	 *            milliseconds for the whole race
+	 * @return the connected blocking socket
+	 * @throws IOException
+	 *             if no address could be connected in time or the race got cancelled
+	 */
+	Socket connect(int timeout) throws IOException {
+		Selector sel = Selector.open();
+		selector = sel;
+
+		List<SocketChannel> channels = new ArrayList<SocketChannel>();
+		SocketChannel winner = null;
+		IOException last = null;
+		int started = 0;
+		int failed = 0;
+		long now = System.currentTimeMillis();
+		long deadline = now + timeout;
+		long nextAttempt = now;
+
+		try {
+			while (null == winner) {
+				if (cancelled)
+					throw new IOException( "Connect cancelled" );
+
+				now = System.currentTimeMillis();
+				if (now >= deadline)
+					throw new SocketTimeoutException( "Connect timed out" );
+
+				// Start the next address when its turn came or all pending attempts failed.
+				if (started < addrs.length && (now >= nextAttempt || failed == started)) {
+					SocketChannel ch = SocketChannel.open();
+					channels.add( ch );
+					InetSocketAddress addr = addrs[started++];
+					try {
+						ch.configureBlocking( false );
+						if (ch.connect( addr )) {
+							winner = ch;
+							break;
+						}
+						ch.register( sel, SelectionKey.OP_CONNECT );
+						nextAttempt = now + ATTEMPT_DELAY;
+					}
+					catch (IOException e) {
+						last = e;
+						failed++;
+						ch.close();
+						continue;
+					}
+				}
+
+				if (failed == started) {
+					if (null != last)
+						throw last;
+					throw new ConnectException( "Connect failed" );
+				}
+
+				long wait = deadline - now;
+				if (started < addrs.length)
+					wait = Math.min( wait, nextAttempt - now );
+				sel.select( Math.max( 1, wait ) );
+
+				Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					SocketChannel ch = ( SocketChannel ) key.channel();
+					try {
+						if (ch.finishConnect()) {
+							winner = ch;
+							break;
+						}
+					}
+					catch (IOException e) {
+						last = e;
+						failed++;
+						key.cancel();
+						ch.close();
+					}
+				}
+			}
+		}
+		catch (ClosedSelectorException e) {
+			throw new IOException( "Connect cancelled" );
+		}
+		finally {
+			for (SocketChannel ch : channels) {
+				if (ch != winner)
+					closeQuietly( ch );
+			}
+			try {
+				// Deregisters the winner as well.
+				sel.close();
+			}
+			catch (IOException e) {
+				// do nothing
+			}
+			if (cancelled && null != winner) {
+				closeQuietly( winner );
+			}
+		}
+
+		if (cancelled)
+			throw new IOException( "Connect cancelled" );
+
+		try {
+			winner.configureBlocking( true );
+		}
+		catch (IOException e) {
+			closeQuietly( winner );
+			throw e;
+		}
+		return winner.socket();
+	}
+
+	/**
+	 * Stops a running race; {@link #connect(int)} then fails.
+	 */
+	void cancel() {
+		cancelled = true;
+		Selector sel = selector;
+		if (null != sel)
+			sel.wakeup();
+	}
+
+	private static void closeQuietly(SocketChannel ch) {
+		try {
+			ch.close();
+		}
+		catch (IOException e) {
+			// do nothing
+		}
+	}
+
+}
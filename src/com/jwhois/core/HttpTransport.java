@@ -0,0 +1,295 @@
+package com.jwhois.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Shared transport for the web based WHOIS servers (the http/https entries of WhoisServers.xml) and the RDAP servers.
+ *
+ * Connections are kept alive and reused through the keep-alive cache of HttpURLConnection: every response body is read
+ * to its end and closed, never disconnected. Responses may come gzip compressed, connect and read timeouts are always
+ * set, and the number of concurrent connections per host is capped.
+ *
+ * HTTPS connections share a TLS context, built on first use, whose session cache lets later handshakes resume. The
+ * context is set on each JWHOIS connection only; the JVM wide defaults stay untouched. RDAP connections are verified
+ * with the default trust managers of the JVM; the web whois pages are not, many of them have broken certificate
+ * chains.
+ */
+public class HttpTransport {
+	private static final int						DEFAULT_MAX_PER_HOST	= 4;
+	private static final int						DRAIN_BUFFER_SIZE		= 4 * 1024;
+	private static final int						SSL_SESSION_CACHE_SIZE	= 1000;
+	private static final int						SSL_SESSION_TIMEOUT		= 60 * 60;
+	private static final Charset					UTF8					= Charset.forName( "UTF-8" );
+
+	private final int								maxPerHost;
+	private final Proxy								proxy;
+	private final ConcurrentMap<String, Semaphore>	hosts;
+	private final ReentrantLock						sslLock;
+	private volatile SSLSocketFactory				sslFactory;
+	private volatile SSLSocketFactory				trustAllFactory;
+
+	public HttpTransport() {
+		this( DEFAULT_MAX_PER_HOST );
+	}
+
+	/**
+	 * @param maxPerHost
+	 *            the maximal number of concurrent connections per host
+	 */
+	public HttpTransport(int maxPerHost) {
+		this( maxPerHost, null );
+	}
+
+	/**
+	 * @param maxPerHost
+	 *            the maximal number of concurrent connections per host
+	 * @param proxy
+	 *            the HTTP proxy all requests go through, null for direct connections
+	 */
+	public HttpTransport(int maxPerHost, Proxy proxy) {
+		this.maxPerHost = Math.max( 1, maxPerHost );
+		this.proxy = proxy;
+		this.hosts = new ConcurrentHashMap<String, Semaphore>();
+		this.sslLock = new ReentrantLock();
+	}
+
+	public int getMaxPerHost() {
+		return maxPerHost;
+	}
+
+	public Proxy getProxy() {
+		return proxy;
+	}
+
+	/**
+	 * Waits for a connection slot of the host.
+	 *
+	 * @param host
+	 * @param timeout
+	 *            in milliseconds
+	 * @return false if no slot got free in time or the thread got interrupted
+	 */
+	boolean acquire(String host, long timeout) {
+		try {
+			return getSlots( host ).tryAcquire( timeout, TimeUnit.MILLISECONDS );
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	void release(String host) {
+		getSlots( host ).release();
+	}
+
+	/**
+	 * Opens a GET connection with timeouts and compression set up. Nothing is sent before the response is read.
+	 *
+	 * @param url
+	 * @param connectTimeout
+	 * @param readTimeout
+	 * @param verify
+	 *            true to validate the certificate chain with the default trust managers of the JVM, as the host name
+	 *            always is
+	 * @return the connection
+	 * @throws IOException
+	 */
+	HttpURLConnection open(URL url, int connectTimeout, int readTimeout, boolean verify) throws IOException {
+		HttpURLConnection conn = ( HttpURLConnection ) ((null != proxy) ? url.openConnection( proxy ) : url
+				.openConnection());
+		conn.setConnectTimeout( connectTimeout );
+		conn.setReadTimeout( readTimeout );
+		conn.setUseCaches( false );
+		conn.setInstanceFollowRedirects( true );
+		conn.setRequestProperty( "Accept-Encoding", "gzip" );
+		if (conn instanceof HttpsURLConnection) {
+			SSLSocketFactory factory = getSSLSocketFactory( verify );
+			if (null != factory)
+				(( HttpsURLConnection ) conn).setSSLSocketFactory( factory );
+		}
+		return conn;
+	}
+
+	/**
+	 * Reads the whole response as cleaned text lines. The stream is always read to its end and closed, which hands the
+	 * connection back to the keep-alive cache.
+	 *
+	 * @param conn
+	 * @return clean list of lines
+	 * @throws IOException
+	 */
+	List<String> read(HttpURLConnection conn) throws IOException {
+		InputStream in = null;
+		try {
+			in = conn.getInputStream();
+		}
+		catch (IOException e) {
+			// Error bodies must be consumed as well, or the connection is not reused.
+			drain( conn.getErrorStream() );
+			throw e;
+		}
+
+		try {
+			if ("gzip".equalsIgnoreCase( conn.getContentEncoding() )) {
+				in = new GZIPInputStream( in );
+			}
+			return Utility.cleanHtml( in );
+		}
+		finally {
+			drain( in );
+		}
+	}
+
+	/**
+	 * Reads the whole JSON response of an RDAP server as its text lines, blank lines dropped. The error body of a 404
+	 * is read as the response: RDAP answers a domain not found that way.
+	 *
+	 * @param conn
+	 * @return the lines of the JSON text
+	 * @throws IOException
+	 *             for any other error status
+	 */
+	List<String> readJson(HttpURLConnection conn) throws IOException {
+		InputStream in = null;
+		try {
+			in = conn.getInputStream();
+		}
+		catch (IOException e) {
+			InputStream err = conn.getErrorStream();
+			if (HttpURLConnection.HTTP_NOT_FOUND != conn.getResponseCode() || null == err) {
+				drain( err );
+				throw e;
+			}
+			in = err;
+		}
+
+		try {
+			if ("gzip".equalsIgnoreCase( conn.getContentEncoding() )) {
+				in = new GZIPInputStream( in );
+			}
+			List<String> list = new ArrayList<String>();
+			BufferedReader br = new BufferedReader( new InputStreamReader( in, UTF8 ) );
+			String line = null;
+			while ((line = br.readLine()) != null) {
+				if (!Utility.isEmpty( line ))
+					list.add( line );
+			}
+			return list;
+		}
+		finally {
+			drain( in );
+		}
+	}
+
+	private SSLSocketFactory getSSLSocketFactory(boolean verify) {
+		SSLSocketFactory factory = verify ? sslFactory : trustAllFactory;
+		if (null != factory)
+			return factory;
+
+		sslLock.lock();
+		try {
+			if (verify && null == sslFactory) {
+				sslFactory = newSSLSocketFactory( null );
+			}
+			else if (!verify && null == trustAllFactory) {
+				// WHOIS web servers often have broken certificate chains, so no chain is validated.
+				trustAllFactory = newSSLSocketFactory( new TrustManager[] { new TrustAllManager() } );
+			}
+		}
+		catch (Exception e) {
+			Utility.logWarn( "HttpTransport::getSSLSocketFactory Exception: ", e );
+		}
+		finally {
+			sslLock.unlock();
+		}
+		return verify ? sslFactory : trustAllFactory;
+	}
+
+	/**
+	 * @param trustManagers
+	 *            null for the defaults of the JVM
+	 */
+	private static SSLSocketFactory newSSLSocketFactory(TrustManager[] trustManagers) throws Exception {
+		SSLContext sc = SSLContext.getInstance( "TLS" );
+		sc.init( null, trustManagers, new SecureRandom() );
+		SSLSessionContext sessions = sc.getClientSessionContext();
+		if (null != sessions) {
+			sessions.setSessionCacheSize( SSL_SESSION_CACHE_SIZE );
+			sessions.setSessionTimeout( SSL_SESSION_TIMEOUT );
+		}
+		return sc.getSocketFactory();
+	}
+
+	private Semaphore getSlots(String host) {
+		host = host.toLowerCase();
+		Semaphore slots = hosts.get( host );
+		if (null == slots) {
+			slots = new Semaphore( maxPerHost, true );
+			Semaphore old = hosts.putIfAbsent( host, slots );
+			if (null != old)
+				slots = old;
+		}
+		return slots;
+	}
+
+	private static class TrustAllManager implements X509TrustManager {
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[] {};
+		}
+
+		public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+		}
+
+		public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+		}
+	}
+
+	private static void drain(InputStream in) {
+		if (null == in)
+			return;
+		try {
+			byte[] buf = new byte[DRAIN_BUFFER_SIZE];
+			while (in.read( buf ) >= 0) {
+				// do nothing
+			}
+		}
+		catch (IOException e) {
+			// do nothing
+		}
+		finally {
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+				// do nothing
+			}
+		}
+	}
+
+}
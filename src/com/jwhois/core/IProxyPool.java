@@ -0,0 +1,32 @@
+package com.jwhois.core;
+
+/**
+ * A proxy factory which learns from the queries: it picks a proxy per WHOIS server and is told the outcome of every
+ * attempt made through it.
+ */
+public interface IProxyPool extends IProxy {
+
+	/**
+	 * @param server
+	 *            the host name of the WHOIS server
+	 * @return the proxy as "host:port", null for a direct connection
+	 */
+	String getProxy(String server);
+
+	/**
+	 * Reports one attempt through a proxy.
+	 *
+	 * @param proxy
+	 *            the proxy as returned by {@link #getProxy(String)}
+	 * @param server
+	 *            the host name of the WHOIS server
+	 * @param success
+	 *            false if the connect or the read failed
+	 * @param connectMillis
+	 *            time to connect through the proxy
+	 * @param firstByteMillis
+	 *            time from the query to the first line of the answer, -1 if none came
+	 */
+	void report(String proxy, String server, boolean success, long connectMillis, long firstByteMillis);
+
+}
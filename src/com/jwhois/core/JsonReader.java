@@ -0,0 +1,366 @@
+package com.jwhois.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A pull reader of JSON text: the caller walks the values in the order of the text and skips what it does not need,
+ * nothing is built but the strings it asks for. Used by the RDAP parser over the lines of an answer.
+ */
+final class JsonReader {
+	static final int		BEGIN_OBJECT	= 1;
+	static final int		END_OBJECT		= 2;
+	static final int		BEGIN_ARRAY		= 3;
+	static final int		END_ARRAY		= 4;
+	static final int		NAME			= 5;
+	static final int		STRING			= 6;
+	// a number, true, false or null
+	static final int		LITERAL			= 7;
+	static final int		END				= 8;
+
+	// What comes next in the enclosing value
+	private static final int	EMPTY_DOCUMENT	= 0;
+	private static final int	DONE_DOCUMENT	= 1;
+	private static final int	EMPTY_ARRAY		= 2;
+	private static final int	ARRAY			= 3;
+	private static final int	EMPTY_OBJECT	= 4;
+	private static final int	OBJECT			= 5;
+	private static final int	OBJECT_VALUE	= 6;
+
+	private final Reader	in;
+	private final char[]	buf				= new char[1024];
+	private int				pos;
+	private int				limit;
+
+	private int[]			stack			= new int[16];
+	private int				depth			= 1;
+	private int				peeked;
+	private String			text;
+
+	JsonReader(Reader in) {
+		this.in = in;
+		stack[0] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Reads the lines of a text, each followed by a line end.
+	 */
+	JsonReader(List<String> lines) {
+		this( new LinesReader( lines ) );
+	}
+
+	/**
+	 * @return the kind of the next token, without reading it
+	 */
+	int peek() throws IOException {
+		if (0 != peeked)
+			return peeked;
+
+		int c;
+		switch (stack[depth - 1]) {
+		case EMPTY_DOCUMENT:
+			stack[depth - 1] = DONE_DOCUMENT;
+			return value( next() );
+		case DONE_DOCUMENT:
+			if (-1 != next())
+				throw error( "Text after the value" );
+			return peeked = END;
+		case EMPTY_ARRAY:
+			stack[depth - 1] = ARRAY;
+			c = next();
+			return (']' == c) ? (peeked = END_ARRAY) : value( c );
+		case ARRAY:
+			c = next();
+			if (']' == c)
+				return peeked = END_ARRAY;
+			if (',' != c)
+				throw error( "Expected , or ]" );
+			return value( next() );
+		case EMPTY_OBJECT:
+		case OBJECT:
+			c = next();
+			if ('}' == c)
+				return peeked = END_OBJECT;
+			if (OBJECT == stack[depth - 1]) {
+				if (',' != c)
+					throw error( "Expected , or }" );
+				c = next();
+			}
+			if ('"' != c)
+				throw error( "Expected a name" );
+			text = string();
+			stack[depth - 1] = OBJECT_VALUE;
+			return peeked = NAME;
+		default:
+			if (':' != next())
+				throw error( "Expected :" );
+			stack[depth - 1] = OBJECT;
+			return value( next() );
+		}
+	}
+
+	boolean hasNext() throws IOException {
+		int p = peek();
+		return END_OBJECT != p && END_ARRAY != p && END != p;
+	}
+
+	void beginObject() throws IOException {
+		expect( BEGIN_OBJECT );
+		push( EMPTY_OBJECT );
+	}
+
+	void endObject() throws IOException {
+		expect( END_OBJECT );
+		depth--;
+	}
+
+	void beginArray() throws IOException {
+		expect( BEGIN_ARRAY );
+		push( EMPTY_ARRAY );
+	}
+
+	void endArray() throws IOException {
+		expect( END_ARRAY );
+		depth--;
+	}
+
+	String nextName() throws IOException {
+		expect( NAME );
+		return text;
+	}
+
+	/**
+	 * @return a string, or the text of a number or boolean; null for null
+	 */
+	String nextString() throws IOException {
+		int p = peek();
+		if (STRING != p && LITERAL != p)
+			throw error( "Expected a string" );
+		peeked = 0;
+		return (LITERAL == p && "null".equals( text )) ? null : text;
+	}
+
+	/**
+	 * @return the next value if it is a string, number or boolean; null if it is null, an object or an array, which is
+	 *         skipped
+	 */
+	String nextStringOrSkip() throws IOException {
+		int p = peek();
+		if (STRING == p || LITERAL == p)
+			return nextString();
+		skipValue();
+		return null;
+	}
+
+	void skipValue() throws IOException {
+		int count = 0;
+		do {
+			int p = peek();
+			if (BEGIN_OBJECT == p) {
+				beginObject();
+				count++;
+			}
+			else if (BEGIN_ARRAY == p) {
+				beginArray();
+				count++;
+			}
+			else if (END_OBJECT == p) {
+				endObject();
+				count--;
+			}
+			else if (END_ARRAY == p) {
+				endArray();
+				count--;
+			}
+			else if (END == p) {
+				throw error( "No value to skip" );
+			}
+			else {
+				peeked = 0;
+			}
+		}
+		while (count > 0);
+	}
+
+	private void expect(int kind) throws IOException {
+		if (peek() != kind)
+			throw error( "Unexpected token" );
+		peeked = 0;
+	}
+
+	private void push(int state) {
+		if (depth == stack.length)
+			stack = Arrays.copyOf( stack, depth * 2 );
+		stack[depth++] = state;
+	}
+
+	private int value(int c) throws IOException {
+		switch (c) {
+		case '{':
+			return peeked = BEGIN_OBJECT;
+		case '[':
+			return peeked = BEGIN_ARRAY;
+		case '"':
+			text = string();
+			return peeked = STRING;
+		case -1:
+			throw error( "Unexpected end" );
+		case ',':
+		case ':':
+		case ']':
+		case '}':
+			throw error( "Expected a value" );
+		default:
+			text = literal( ( char ) c );
+			return peeked = LITERAL;
+		}
+	}
+
+	// The next character which is not white space, -1 at the end
+	private int next() throws IOException {
+		for (;;) {
+			if (pos == limit && !fill())
+				return -1;
+			char c = buf[pos++];
+			if (' ' != c && '\t' != c && '\n' != c && '\r' != c)
+				return c;
+		}
+	}
+
+	private boolean fill() throws IOException {
+		limit = in.read( buf, 0, buf.length );
+		pos = 0;
+		if (limit <= 0) {
+			limit = 0;
+			return false;
+		}
+		return true;
+	}
+
+	// The rest of a string, after its opening quote
+	private String string() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (;;) {
+			int start = pos;
+			while (pos < limit) {
+				char c = buf[pos];
+				if ('"' == c || '\\' == c)
+					break;
+				pos++;
+			}
+			sb.append( buf, start, pos - start );
+			if (pos == limit) {
+				if (!fill())
+					throw error( "Unterminated string" );
+				continue;
+			}
+
+			char c = buf[pos++];
+			if ('"' == c)
+				return sb.toString();
+			sb.append( escape() );
+		}
+	}
+
+	private char escape() throws IOException {
+		int c = read();
+		switch (c) {
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int v = 0;
+			for (int i = 0; i < 4; i++) {
+				int d = Character.digit( read(), 16 );
+				if (d < 0)
+					throw error( "Bad unicode escape" );
+				v = (v << 4) | d;
+			}
+			return ( char ) v;
+		case '"':
+		case '\\':
+		case '/':
+			return ( char ) c;
+		default:
+			throw error( "Bad escape" );
+		}
+	}
+
+	private int read() throws IOException {
+		if (pos == limit && !fill())
+			return -1;
+		return buf[pos++];
+	}
+
+	private String literal(char first) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append( first );
+		for (;;) {
+			if (pos == limit && !fill())
+				break;
+			char c = buf[pos];
+			if (',' == c || '}' == c || ']' == c || ':' == c || ' ' == c || '\t' == c || '\n' == c || '\r' == c)
+				break;
+			sb.append( c );
+			pos++;
+		}
+		return sb.toString();
+	}
+
+	private IOException error(String message) {
+		return new IOException( "JSON syntax error: " + message );
+	}
+
+	/**
+	 * The lines of a text as one stream, each followed by a line end.
+	 */
+	private static final class LinesReader extends Reader {
+		private final Iterator<String>	lines;
+		private String					line;
+		private int						at;
+
+		LinesReader(List<String> lines) {
+			this.lines = lines.iterator();
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			int n = 0;
+			while (n < len) {
+				if (null == line) {
+					if (!lines.hasNext())
+						break;
+					String l = lines.next();
+					line = (null == l) ? "" : l;
+					at = 0;
+				}
+				if (at == line.length()) {
+					cbuf[off + n++] = '\n';
+					line = null;
+					continue;
+				}
+				int k = Math.min( len - n, line.length() - at );
+				line.getChars( at, at + k, cbuf, off + n );
+				at += k;
+				n += k;
+			}
+			return (n == 0) ? -1 : n;
+		}
+
+		@Override
+		public void close() {
+			// nothing to release
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.jwhois.core;
+
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class LimitHandler extends DefaultHandler {
+
+	private static final String				ROOT		= "JWHOIS";
+	private static final String				LISTNAME	= "LimitList";
+	private static final String				ITEM		= "SERVER";
+	private static final String				KEY			= "KEY";
+	private static final String				RATE		= "RATE";
+	private static final String				BURST		= "BURST";
+	private static final String				DAILY		= "DAILY";
+
+	private Map<String, RateLimiter.Limit>	map;
+	private boolean							inList;
+	private String							key;
+	private double							rate;
+	private int								burst;
+	private long							daily;
+	private StringBuilder					builder;
+
+	public Map<String, RateLimiter.Limit> getMap() {
+		return map;
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (map == null) {
+			return;
+		}
+		if (builder != null) {
+			builder.append( ch, start, length );
+		}
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		String test = localName;
+		if (null == test || "".equals( test )) {
+			test = qName;
+		}
+		if (null == test) {
+			test = "";
+		}
+
+		if (test.equals( ROOT )) {
+			map = new Hashtable<String, RateLimiter.Limit>();
+		}
+		if (map == null) {
+			return;
+		}
+		if (test.equals( LISTNAME )) {
+			inList = true;
+		}
+		else if (test.equals( ITEM ) && inList) {
+			key = "";
+			rate = 0;
+			burst = 1;
+			daily = 0;
+		}
+		else if (test.equals( KEY ) || test.equals( RATE ) || test.equals( BURST ) || test.equals( DAILY )) {
+			builder = new StringBuilder();
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		String test = localName;
+		if (null == test || "".equals( test )) {
+			test = qName;
+		}
+		if (null == test) {
+			test = "";
+		}
+
+		if (test.equals( ROOT )) {
+			inList = false;
+			key = "";
+			builder = null;
+		}
+		if (map == null) {
+			return;
+		}
+		if (test.equals( ITEM ) && inList) {
+			if (!Utility.isEmpty( key ) && rate > 0)
+				map.put( key, new RateLimiter.Limit( rate, burst, daily ) );
+		}
+		else if (test.equals( LISTNAME )) {
+			inList = false;
+		}
+		else if (builder != null) {
+			String str = builder.toString().trim();
+			builder = null;
+			try {
+				if (test.equals( KEY )) {
+					key = str.toLowerCase();
+				}
+				else if (test.equals( RATE )) {
+					rate = Double.parseDouble( str );
+				}
+				else if (test.equals( BURST )) {
+					burst = Integer.parseInt( str );
+				}
+				else if (test.equals( DAILY )) {
+					daily = Long.parseLong( str );
+				}
+			}
+			catch (NumberFormatException e) {
+				Utility.logWarn( "LimitHandler::endElement NumberFormatException: <key:" + key + "><" + test + ":"
+						+ str + ">", e );
+			}
+		}
+	}
+
+}
@@ -0,0 +1,254 @@
+package com.jwhois.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parse stages of {@link WhoisMap} one line at a time, so an answer can be parsed while it is read. The lines are
+ * fed in the order of the rawdata; {@link #result()} gives the RDMap ( the Raw Data Map ) of the lines fed so far.
+ *
+ * While feeding, the parser keeps the first registrar whois server it meets, which the engine may close the
+ * connection on.
+ */
+final class LineParser {
+	private final ServerProfile				profile;
+	private final String					parser;
+	private final TokenStream				tokens	= new TokenStream();
+	private final WhoisMap					rdMap	= new WhoisMap();
+	private final Canonicalizer				canon	= Utility.getCanonicalizer();
+
+	// the contact block being read
+	private List<String>					cList;
+	private boolean							cRead;
+
+	// parser b: the contact handles and the blocks of the handles
+	private Map<String, String>				cMap;
+	private Map<String, List<String>>		hdlMap;
+
+	private String							referral;
+
+	LineParser(ServerProfile profile) {
+		this.profile = profile;
+		this.parser = profile.getParser();
+		if ("b".equals( parser )) {
+			cMap = new HashMap<String, String>();
+			hdlMap = new HashMap<String, List<String>>();
+		}
+	}
+
+	/**
+	 * Parses all lines of an answer.
+	 */
+	static LineParser of(ServerProfile profile, List<String> rawdata) {
+		LineParser lp = new LineParser( profile );
+		for (String line : rawdata) {
+			lp.feed( line );
+		}
+		return lp;
+	}
+
+	void feed(String line) {
+		tokens.add( line );
+		int i = tokens.size() - 1;
+		if ("a".equals( parser )) {
+			feedA( i, profile.getContactPrefixes() );
+		}
+		else if ("b".equals( parser )) {
+			feedB( i, profile.getContacts(), profile.getBlockHeads(), profile.getContactHandles() );
+		}
+		else if ("c".equals( parser )) {
+			feedC( i );
+		}
+	}
+
+	/**
+	 * @return true if the lines fed are the lines of the rawdata, the same instances in the same order
+	 */
+	boolean isFedWith(List<String> rawdata) {
+		if (null == rawdata || rawdata.size() != tokens.size())
+			return false;
+		int i = 0;
+		for (String line : rawdata) {
+			if (line != tokens.line( i++ ))
+				return false;
+		}
+		return true;
+	}
+
+	ServerProfile getProfile() {
+		return profile;
+	}
+
+	TokenStream getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * @return the first value fed of a key translated to regyinfo.whois, null if none yet
+	 */
+	String getReferral() {
+		return referral;
+	}
+
+	/**
+	 * @return the RDMap of the lines fed, null for an unknown parser
+	 */
+	Map<String, Object> result() {
+		if ("b".equals( parser )) {
+			// Rebuild the contacts, if have some.
+			if (!Utility.isEmpty( cMap )) {
+				for (String contact : cMap.keySet()) {
+					String hdl = cMap.get( contact );
+					for (String key : hdlMap.keySet()) {
+						if (hdl.startsWith( key )) {
+							rdMap.getMap().put( contact, hdlMap.get( key ) );
+						}
+					}
+				}
+			}
+		}
+		else if (!"a".equals( parser ) && !"c".equals( parser )) {
+			return null;
+		}
+		return rdMap.getMap();
+	}
+
+	private void put(String key, String val) {
+		if (null != canon && profile.isCanonical( key ))
+			val = canon.canonical( val );
+		rdMap.set( key, val, true );
+		if (null == referral && !Utility.isEmpty( val )) {
+			WhoisPath[] paths = profile.getTranslatePaths( key );
+			if (null != paths) {
+				String[] trans = profile.getTranslates( key );
+				for (int i = 0; i < paths.length; i++) {
+					if (WhoisMap.WHOIS.equals( paths[i] ) && !trans[i].startsWith( "k|" )) {
+						referral = val;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 *  == WHOIS RAWDATA TYPE A ==
+	 *
+	 *  k:v
+	 *  k:v
+	 *  ...
+	 *  a contact
+	 *  	... (contact info)
+	 *  	...
+	 *  another contact
+	 *  	... (contact info)
+	 *  	...
+	 *  k:v
+	 *  ...
+	 */
+	private void feedA(int i, PrefixMatcher contacts) {
+		if (null != contacts) {
+			// If we find a contact prefix, read to its end and save as line list.
+			String val = contacts.match( tokens.line( i ) );
+			if (null != val) {
+				if ("break".equals( val )) {
+					cRead = false;
+				}
+				else {
+					cList = new ArrayList<String>();
+					rdMap.getMap().put( val, cList );
+					cRead = true;
+				}
+			}
+			if (cRead) {
+				cList.add( tokens.handTrimmed( i ) );
+				return;
+			}
+		}
+
+		// We only takes the line matches REGEX_BLINE
+		LineToken t = tokens.get( i );
+		if (t.isMatched()) {
+			put( t.key(), t.value() );
+		}
+	}
+
+	private boolean inArray(Object o, Object[] arr) {
+		if (o == null || arr == null || arr.length == 0)
+			return false;
+		for (Object a : arr) {
+			if (o.equals( a )) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 *  == WHOIS RAWDATA TYPE B ==
+	 *
+	 *  k:v
+	 *  k:v
+	 *  contact:handle
+	 *  contact:handle
+	 *  ...
+	 *  [block head]:handle
+	 *  	... (contact info)
+	 *  	...
+	 *  [block head]:handle
+	 *  	... (contact info)
+	 *  	...
+	 *  k:v
+	 *  ...
+	 */
+	private void feedB(int i, Map<String, String> contacts, String[] blockHeads, String[] contactHandles) {
+		LineToken t = tokens.get( i );
+		if (!t.isMatched())
+			return;
+
+		String key = t.key();
+		String val = t.value();
+		if (!Utility.isEmpty( blockHeads ) && !Utility.isEmpty( contactHandles ) && inArray( key, blockHeads )) {
+			if ("break".equals( contacts.get( key ) )) {
+				cRead = false;
+				return;
+			}
+			else {
+				cList = new ArrayList<String>();
+				cRead = true;
+			}
+		}
+		if (cRead && (null != cList)) {
+			cList.add( tokens.hand( i ) );
+			if (inArray( key, contactHandles )) {
+				hdlMap.put( val, cList );
+			}
+			return;
+		}
+
+		// If we find a contact, save it for secondary finding.
+		if (!Utility.isEmpty( contacts ) && contacts.containsKey( key )) {
+			cMap.put( contacts.get( key ), val );
+			return;
+		}
+		put( key, val );
+	}
+
+	/*
+	 *  == WHOIS RAWDATA TYPE C ==
+	 *
+	 *  k ...... v
+	 *  k ...... v
+	 *  k ...... v
+	 *  ...
+	 */
+	private void feedC(int i) {
+		LineToken t = tokens.get( i );
+		if (t.isMatched()) {
+			put( t.key(), t.value() );
+		}
+	}
+
+}
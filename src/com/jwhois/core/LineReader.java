@@ -0,0 +1,200 @@
+package com.jwhois.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits a WHOIS response into lines on the raw bytes, with the same line ends as BufferedReader.readLine ("\n", "\r"
+ * or "\r\n"). The bytes of the current line stay in a reusable buffer; a line is decoded (UTF-8) only when its String
+ * is asked for, so skipped lines cost no allocation.
+ */
+final class LineReader {
+	private static final int		BUFFER_SIZE	= 8 * 1024;
+	private static final Charset	UTF8		= Charset.forName( "UTF-8" );
+
+	private final InputStream		in;
+	private final AsciiView			view;
+	private byte[]					buf;
+	private int						pos;
+	private int						limit;
+	private boolean					eof;
+	private boolean					skipLF;
+
+	// The current line
+	private int						start;
+	private int						end;
+	private boolean					ascii;
+	private String					decoded;
+
+	LineReader(InputStream in) {
+		this.in = in;
+		this.buf = new byte[BUFFER_SIZE];
+		this.view = new AsciiView();
+	}
+
+	/**
+	 * Reads the bytes handed with {@link #feed(ByteBuffer)}: {@link #next()} gives the lines complete so far, the last
+	 * one too after {@link #end()}.
+	 */
+	LineReader() {
+		this.in = null;
+		this.buf = new byte[BUFFER_SIZE];
+		this.view = new AsciiView();
+	}
+
+	/**
+	 * Moves to the next line.
+	 *
+	 * @return false at the end of the stream
+	 * @throws IOException
+	 */
+	boolean next() throws IOException {
+		decoded = null;
+		if (skipLF) {
+			if (pos >= limit && !fill())
+				return false;
+			if (buf[pos] == '\n')
+				pos++;
+			skipLF = false;
+		}
+
+		int scan = pos;
+		ascii = true;
+		for (;;) {
+			while (scan < limit) {
+				byte b = buf[scan];
+				if (b == '\n' || b == '\r') {
+					start = pos;
+					end = scan;
+					pos = scan + 1;
+					skipLF = (b == '\r');
+					return true;
+				}
+				if (b < 0)
+					ascii = false;
+				scan++;
+			}
+
+			int scanned = scan - pos;
+			if (!fill()) {
+				// Fed bytes: the rest may be the head of a line yet to come.
+				if (eof && limit > pos) {
+					start = pos;
+					end = limit;
+					pos = limit;
+					return true;
+				}
+				return false;
+			}
+			scan = pos + scanned;
+		}
+	}
+
+	/**
+	 * Appends bytes read; the current line is not valid any more.
+	 */
+	void feed(ByteBuffer data) {
+		int n = limit - pos;
+		if (pos > 0) {
+			System.arraycopy( buf, pos, buf, 0, n );
+			pos = 0;
+			limit = n;
+		}
+		if (limit + data.remaining() > buf.length)
+			buf = Arrays.copyOf( buf, Math.max( buf.length * 2, limit + data.remaining() ) );
+		n = data.remaining();
+		data.get( buf, limit, n );
+		limit += n;
+	}
+
+	/**
+	 * Marks the end of the fed bytes: the rest is the last line.
+	 */
+	void end() {
+		eof = true;
+	}
+
+	byte[] buffer() {
+		return buf;
+	}
+
+	int start() {
+		return start;
+	}
+
+	int length() {
+		return end - start;
+	}
+
+	/**
+	 * @return the current line for matching: a view on the buffer for ASCII lines, the decoded String otherwise. Only
+	 *         valid until the next call of {@link #next()}.
+	 */
+	CharSequence chars() {
+		if (ascii) {
+			view.len = end - start;
+			return view;
+		}
+		return string();
+	}
+
+	/**
+	 * @return the current line decoded
+	 */
+	String string() {
+		if (null == decoded)
+			decoded = new String( buf, start, end - start, UTF8 );
+		return decoded;
+	}
+
+	private boolean fill() throws IOException {
+		if (null == in || eof)
+			return false;
+
+		// Keep the pending part of the line at the head of the buffer.
+		int n = limit - pos;
+		if (pos > 0) {
+			System.arraycopy( buf, pos, buf, 0, n );
+			pos = 0;
+			limit = n;
+		}
+		if (limit == buf.length)
+			buf = Arrays.copyOf( buf, buf.length * 2 );
+
+		int r = in.read( buf, limit, buf.length - limit );
+		if (r < 0) {
+			eof = true;
+			return false;
+		}
+		limit += r;
+		return true;
+	}
+
+	private class AsciiView implements CharSequence {
+		int	len;
+
+		@Override
+		public int length() {
+			return len;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return ( char ) buf[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int s, int e) {
+			return new String( buf, start + s, e - s, UTF8 );
+		}
+
+		@Override
+		public String toString() {
+			return string();
+		}
+	}
+
+}
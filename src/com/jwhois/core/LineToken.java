@@ -0,0 +1,218 @@
+package com.jwhois.core;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One raw line split into key, separator and value: the "key: value", "key ...... value" and "key      value" layouts
+ * of the WHOIS answers. A hand-written scanner gives the same result as matching REGEX_LINEB with find(), including
+ * the matches its backtracking finds in odd lines; lines with a line terminator or a surrogate pair go to the regex.
+ *
+ * The key and the value are cut lazily, key lower cased and value trimmed like the parsers did with the groups.
+ */
+final class LineToken {
+	// line type B : key = group(1); value = group(3)
+	static final String			REGEX_LINEB	= "^\\s*([\u0000-\u0039\u003B-\u007E]+)\\s*(:|[\\.]{3,}|\\s{5,})\\s*([^\\/][^\\/].*)\\s*$";
+
+	private static final Pattern	PN_LINEB	= Pattern.compile( REGEX_LINEB, Pattern.CASE_INSENSITIVE );
+
+	static final int			NONE		= 0;
+	static final int			COLON		= 1;
+	static final int			DOTS		= 2;
+	static final int			SPACES		= 3;
+
+	private final String		line;
+	private final int			indent;
+	private final int			separator;
+	private final int			keyStart;
+	private final int			keyEnd;
+	private final int			valueStart;
+	private final int			end;
+
+	private String				key;
+	private String				value;
+
+	private LineToken(String line, int indent, int separator, int keyStart, int keyEnd, int valueStart, int end) {
+		this.line = line;
+		this.indent = indent;
+		this.separator = separator;
+		this.keyStart = keyStart;
+		this.keyEnd = keyEnd;
+		this.valueStart = valueStart;
+		this.end = end;
+	}
+
+	static LineToken tokenize(String line) {
+		return tokenize( line, 0, line.length() );
+	}
+
+	/**
+	 * Tokenizes the part [from, to) of the line, as the regex would match line.substring( from, to ).
+	 */
+	static LineToken tokenize(String line, int from, int to) {
+		int lead = from;
+		while (lead < to && isSpace( line.charAt( lead ) )) {
+			lead++;
+		}
+
+		for (int i = from; i < to; i++) {
+			char c = line.charAt( i );
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029'
+					|| Character.isSurrogate( c ))
+				return match( line, from, to, lead );
+		}
+
+		int run = lead;
+		while (run < to && isKey( line.charAt( run ) )) {
+			run++;
+		}
+
+		// The order the regex backtracks in: the key shrinks from the longest run; once it is down to the first
+		// character, the leading \s* gives up characters and the key is one blank.
+		for (int e = run; e > from; e--) {
+			int start = (e > lead) ? lead : e - 1;
+			long sv = rest( line, e, to );
+			if (sv >= 0)
+				return new LineToken( line, lead - from, ( int ) (sv >>> 32), start, e, ( int ) sv, to );
+		}
+		return new LineToken( line, lead - from, NONE, from, from, to, to );
+	}
+
+	/**
+	 * Matches \s*(:|[\.]{3,}|\s{5,})\s*([^\/][^\/].*)\s*$ at e.
+	 *
+	 * @return the separator kind in the high int and the start of the value in the low int, -1 if no match
+	 */
+	private static long rest(String s, int e, int to) {
+		int ws = e;
+		while (ws < to && isSpace( s.charAt( ws ) )) {
+			ws++;
+		}
+		for (int p = ws; p >= e; p--) {
+			if (p < to && s.charAt( p ) == ':') {
+				int v = value( s, p + 1, to );
+				if (v >= 0)
+					return (( long ) COLON << 32) | v;
+			}
+
+			int dots = p;
+			while (dots < to && s.charAt( dots ) == '.') {
+				dots++;
+			}
+			for (int q = dots; q >= p + 3; q--) {
+				int v = value( s, q, to );
+				if (v >= 0)
+					return (( long ) DOTS << 32) | v;
+			}
+
+			for (int q = ws; q >= p + 5; q--) {
+				int v = value( s, q, to );
+				if (v >= 0)
+					return (( long ) SPACES << 32) | v;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Matches \s*([^\/][^\/].*)\s*$ at q.
+	 *
+	 * @return the start of group 3, -1 if no match
+	 */
+	private static int value(String s, int q, int to) {
+		int ws = q;
+		while (ws < to && isSpace( s.charAt( ws ) )) {
+			ws++;
+		}
+		for (int t = ws; t >= q; t--) {
+			if (t + 2 <= to && s.charAt( t ) != '/' && s.charAt( t + 1 ) != '/')
+				return t;
+		}
+		return -1;
+	}
+
+	private static LineToken match(String line, int from, int to, int lead) {
+		// Not a region: the regex reads a surrogate pair across the end of a region.
+		Matcher m = PN_LINEB.matcher( (from == 0 && to == line.length()) ? line : line.substring( from, to ) );
+		if (!m.find())
+			return new LineToken( line, lead - from, NONE, from, from, to, to );
+
+		char c = m.group( 2 ).charAt( 0 );
+		int sep = (c == ':') ? COLON : (c == '.') ? DOTS : SPACES;
+		return new LineToken( line, lead - from, sep, from + m.start( 1 ), from + m.end( 1 ), from + m.start( 3 ), from
+				+ m.end( 3 ) );
+	}
+
+	// \s of java.util.regex
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	// [\u0000-\u0039\u003B-\u007E], the case insensitive match folds ASCII only
+	private static boolean isKey(char c) {
+		return c <= '9' || (c >= ';' && c <= '~');
+	}
+
+	/**
+	 * @return true if the line has the key/value layout
+	 */
+	boolean isMatched() {
+		return separator != NONE;
+	}
+
+	/**
+	 * @return COLON, DOTS, SPACES or NONE
+	 */
+	int getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * @return the number of leading blanks
+	 */
+	int getIndent() {
+		return indent;
+	}
+
+	/**
+	 * @return the key, trimmed and lower cased
+	 */
+	String key() {
+		if (null == key) {
+			int s = keyStart, e = keyEnd;
+			while (s < e && line.charAt( s ) <= ' ') {
+				s++;
+			}
+			while (e > s && line.charAt( e - 1 ) <= ' ') {
+				e--;
+			}
+			key = line.substring( s, e ).toLowerCase();
+		}
+		return key;
+	}
+
+	/**
+	 * @return the value, trimmed
+	 */
+	String value() {
+		if (null == value) {
+			int s = valueStart, e = end;
+			while (s < e && line.charAt( s ) <= ' ') {
+				s++;
+			}
+			while (e > s && line.charAt( e - 1 ) <= ' ') {
+				e--;
+			}
+			value = line.substring( s, e );
+		}
+		return value;
+	}
+
+	/**
+	 * @return the value as matched, not trimmed
+	 */
+	String rawValue() {
+		return line.substring( valueStart, end );
+	}
+
+}
@@ -0,0 +1,621 @@
+package com.jwhois.core;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Non-blocking port-43 transport. A few selector threads multiplex all in-flight WHOIS exchanges, so the number of
+ * open queries is no longer bound to the number of threads. An exchange can be awaited, or composed on with
+ * {@link Exchange#completion()} without any thread waiting for it.
+ *
+ * Install it with {@link Utility#setNioTransport(NioTransport)}. Queries that go through a SOCKS proxy still use the
+ * blocking socket path. A host with several addresses is connected the {@link HappyEyeballs} way: a further address is
+ * tried every {@link HappyEyeballs#ATTEMPT_DELAY} milliseconds and the first connection wins.
+ */
+public class NioTransport {
+	private static final int	READ_BUFFER_SIZE	= 16 * 1024;
+	private static final long	SELECT_INTERVAL		= 100;
+
+	private final Dispatcher[]	dispatchers;
+	private final AtomicInteger	next;
+
+	public NioTransport() throws IOException {
+		this( 1 );
+	}
+
+	/**
+	 * @param threads
+	 *            the number of selector threads
+	 * @throws IOException
+	 *             if a selector could not be opened
+	 */
+	public NioTransport(int threads) throws IOException {
+		if (threads < 1)
+			threads = 1;
+		this.next = new AtomicInteger();
+		this.dispatchers = new Dispatcher[threads];
+		for (int i = 0; i < threads; i++) {
+			dispatchers[i] = new Dispatcher( i );
+		}
+		for (Dispatcher d : dispatchers) {
+			d.start();
+		}
+	}
+
+	/**
+	 * Starts a WHOIS exchange: connect to the address, send the query and read until the server closes the
+	 * connection.
+	 *
+	 * @param addr
+	 * @param query
+	 *            the bytes to send
+	 * @param connectTimeout
+	 *            the connect deadline in milliseconds
+	 * @param readTimeout
+	 *            the maximal idle time between two reads in milliseconds
+	 * @return the exchange, which can be awaited or cancelled
+	 */
+	public Exchange query(InetSocketAddress addr, byte[] query, long connectTimeout, long readTimeout) {
+		return query( addr, query, connectTimeout, readTimeout, Long.MAX_VALUE );
+	}
+
+	/**
+	 * Starts a WHOIS exchange which also ends at an absolute deadline, whatever the server does.
+	 *
+	 * @param addr
+	 * @param query
+	 *            the bytes to send
+	 * @param connectTimeout
+	 *            the connect deadline in milliseconds
+	 * @param readTimeout
+	 *            the maximal idle time between two reads in milliseconds
+	 * @param expires
+	 *            the time in milliseconds when the exchange fails with a timeout
+	 * @return the exchange, which can be awaited or cancelled
+	 */
+	public Exchange query(InetSocketAddress addr, byte[] query, long connectTimeout, long readTimeout, long expires) {
+		return query( new InetSocketAddress[] { addr }, query, connectTimeout, readTimeout, expires );
+	}
+
+	/**
+	 * Starts a WHOIS exchange with the first of the addresses which connects.
+	 *
+	 * @param addrs
+	 *            the addresses of the server, in connect order
+	 * @param query
+	 *            the bytes to send
+	 * @param connectTimeout
+	 *            the connect deadline in milliseconds, for all addresses together
+	 * @param readTimeout
+	 *            the maximal idle time between two reads in milliseconds
+	 * @param expires
+	 *            the time in milliseconds when the exchange fails with a timeout
+	 * @return the exchange, which can be awaited or cancelled
+	 */
+	public Exchange query(InetSocketAddress[] addrs, byte[] query, long connectTimeout, long readTimeout,
+			long expires) {
+		return query( addrs, query, connectTimeout, readTimeout, expires, null );
+	}
+
+	/**
+	 * Starts a WHOIS exchange with the first of the addresses which connects, handing the answer to a receiver as it
+	 * is read instead of keeping it.
+	 *
+	 * @param addrs
+	 *            the addresses of the server, in connect order
+	 * @param query
+	 *            the bytes to send
+	 * @param connectTimeout
+	 *            the connect deadline in milliseconds, for all addresses together
+	 * @param readTimeout
+	 *            the maximal idle time between two reads in milliseconds
+	 * @param expires
+	 *            the time in milliseconds when the exchange fails with a timeout
+	 * @param receiver
+	 *            takes the bytes read, null to keep them for {@link Exchange#getData()}
+	 * @return the exchange, which can be awaited or cancelled
+	 */
+	public Exchange query(InetSocketAddress[] addrs, byte[] query, long connectTimeout, long readTimeout,
+			long expires, Receiver receiver) {
+		Exchange ex = new Exchange( addrs, query, connectTimeout, readTimeout, expires, receiver );
+		Dispatcher d = dispatchers[(next.getAndIncrement() & Integer.MAX_VALUE) % dispatchers.length];
+		d.submit( ex );
+		return ex;
+	}
+
+	/**
+	 * Stops the selector threads. In-flight exchanges are failed.
+	 */
+	public void shutdown() {
+		for (Dispatcher d : dispatchers) {
+			d.shutdown();
+		}
+	}
+
+	/**
+	 * Takes the answer of an exchange as it is read, on the selector thread: the work done here holds up the other
+	 * exchanges of the thread. It is never called once the exchange is over, cancelled included.
+	 */
+	public interface Receiver {
+		/**
+		 * @param data
+		 *            the bytes read, valid during the call only
+		 * @return false to end the exchange now, with the rest of the answer unread
+		 * @throws IOException
+		 *             to fail the exchange
+		 */
+		boolean received(ByteBuffer data) throws IOException;
+	}
+
+	/**
+	 * One WHOIS request/response on a non-blocking channel.
+	 */
+	public static class Exchange {
+		private final InetSocketAddress[]	addrs;
+		private final List<SocketChannel>	channels;
+		private final ByteBuffer		out;
+		private final long				connectTimeout;
+		private final long				readTimeout;
+		private final long				expires;
+		private final CountDownLatch	latch;
+		private final CompletableFuture<Exchange>	completion;
+		private final Receiver			receiver;
+		// Keeps the receiver and the end of the exchange apart.
+		private final ReentrantLock		lock;
+
+		private volatile boolean		connected;
+		private volatile IOException	error;
+		private byte[]					data;
+		private int						size;
+		private long					deadline;
+
+		// Connect race state, owned by the dispatcher thread
+		private int						started;
+		private int						failed;
+		private long					nextAttempt;
+		private IOException				lastError;
+		// The due time of the timer queued for the exchange, owned by the dispatcher thread
+		private long					timerAt;
+
+		Exchange(InetSocketAddress[] addrs, byte[] query, long connectTimeout, long readTimeout, long expires,
+				Receiver receiver) {
+			this.addrs = addrs;
+			this.channels = new ArrayList<SocketChannel>( addrs.length );
+			this.out = ByteBuffer.wrap( query );
+			this.connectTimeout = connectTimeout;
+			this.readTimeout = readTimeout;
+			this.expires = expires;
+			this.latch = new CountDownLatch( 1 );
+			this.completion = new CompletableFuture<Exchange>();
+			this.receiver = receiver;
+			this.lock = new ReentrantLock();
+			this.data = (null == receiver) ? new byte[1024] : new byte[0];
+			this.size = 0;
+			this.timerAt = Long.MAX_VALUE;
+		}
+
+		/**
+		 * Waits until the server closed the connection, a deadline passed or the exchange failed.
+		 *
+		 * @throws InterruptedException
+		 */
+		public void await() throws InterruptedException {
+			latch.await();
+		}
+
+		public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+			return latch.await( timeout, unit );
+		}
+
+		public boolean isDone() {
+			return latch.getCount() == 0;
+		}
+
+		/**
+		 * @return a future completed with the exchange once it is over, whatever the outcome. Stages chained without an
+		 *         executor may run on the selector thread and must not block it.
+		 */
+		public CompletableFuture<Exchange> completion() {
+			return completion;
+		}
+
+		/**
+		 * @return true if the channel got connected
+		 */
+		public boolean isConnected() {
+			return connected;
+		}
+
+		/**
+		 * @return the error which ended the exchange, or null if the server closed the connection normally
+		 */
+		public IOException getError() {
+			return error;
+		}
+
+		/**
+		 * @return the bytes received so far; none if a receiver takes them
+		 */
+		public synchronized byte[] getData() {
+			return Arrays.copyOf( data, size );
+		}
+
+		/**
+		 * Aborts the exchange and closes the underlying channel.
+		 */
+		public void cancel() {
+			fail( new IOException( "Exchange cancelled" ) );
+		}
+
+		private void extend(long now, long timeout) {
+			deadline = (timeout > 0 && now < expires - timeout) ? now + timeout : expires;
+		}
+
+		private synchronized void append(ByteBuffer buf) {
+			int n = buf.remaining();
+			if (size + n > data.length) {
+				data = Arrays.copyOf( data, Math.max( data.length * 2, size + n ) );
+			}
+			buf.get( data, size, n );
+			size += n;
+		}
+
+		/**
+		 * @return false if the exchange is already over; the channel is closed then
+		 */
+		private boolean add(SocketChannel ch) {
+			synchronized (channels) {
+				if (!isDone()) {
+					channels.add( ch );
+					return true;
+				}
+			}
+			close( ch );
+			return false;
+		}
+
+		private void drop(SocketChannel ch) {
+			synchronized (channels) {
+				channels.remove( ch );
+			}
+			close( ch );
+		}
+
+		// Closes the losers of the connect race.
+		private void keep(SocketChannel winner) {
+			synchronized (channels) {
+				for (SocketChannel ch : channels) {
+					if (ch != winner)
+						close( ch );
+				}
+				channels.clear();
+				channels.add( winner );
+			}
+		}
+
+		/**
+		 * @return false if the exchange is over, the receiver wanting no more included
+		 */
+		private boolean receive(ByteBuffer buf) throws IOException {
+			lock.lock();
+			try {
+				if (isDone())
+					return false;
+				if (null == receiver) {
+					append( buf );
+					return true;
+				}
+				if (receiver.received( buf ))
+					return true;
+				finish();
+				return false;
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		private void fail(IOException e) {
+			lock.lock();
+			try {
+				if (isDone())
+					return;
+				error = e;
+				finish();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		private void finish() {
+			synchronized (channels) {
+				latch.countDown();
+				for (SocketChannel ch : channels) {
+					close( ch );
+				}
+			}
+			completion.complete( this );
+		}
+
+		private static void close(SocketChannel ch) {
+			try {
+				ch.close();
+			}
+			catch (IOException e) {
+				// do nothing
+			}
+		}
+	}
+
+	private class Dispatcher implements Runnable {
+		private final Selector			selector;
+		private final Queue<Exchange>	pending;
+		// The deadlines and connect attempts to come, the first due at the head
+		private final PriorityQueue<Timer>	timers;
+		private final ByteBuffer		buffer;
+		private final Thread			thread;
+		private volatile boolean		running;
+
+		Dispatcher(int id) throws IOException {
+			this.selector = Selector.open();
+			this.pending = new ConcurrentLinkedQueue<Exchange>();
+			this.timers = new PriorityQueue<Timer>();
+			this.buffer = ByteBuffer.allocateDirect( READ_BUFFER_SIZE );
+			this.thread = new Thread( this, "jwhois-nio-" + id );
+			this.thread.setDaemon( true );
+			this.running = true;
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		void submit(Exchange ex) {
+			if (!running) {
+				ex.fail( new IOException( "NioTransport is shut down" ) );
+				return;
+			}
+			pending.add( ex );
+			selector.wakeup();
+		}
+
+		void shutdown() {
+			running = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					selector.select( selectTimeout() );
+					register();
+
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						handle( key );
+					}
+
+					expire( System.currentTimeMillis() );
+				}
+			}
+			catch (IOException e) {
+				Utility.logWarn( "NioTransport::run IOException: ", e );
+			}
+			catch (ClosedSelectorException e) {
+				// do nothing
+			}
+			finally {
+				close();
+			}
+		}
+
+		// Wakes up for the first timer due, or after the interval to check for a shutdown
+		private long selectTimeout() {
+			Timer t = timers.peek();
+			if (null == t)
+				return SELECT_INTERVAL;
+			return Math.max( 1, Math.min( SELECT_INTERVAL, t.at - System.currentTimeMillis() ) );
+		}
+
+		private void register() {
+			Exchange ex = null;
+			while ((ex = pending.poll()) != null) {
+				if (ex.isDone())
+					continue;
+				long now = System.currentTimeMillis();
+				ex.extend( now, ex.connectTimeout );
+				attempt( ex, now );
+			}
+		}
+
+		// Starts a connect to the next address of the exchange.
+		private void attempt(Exchange ex, long now) {
+			while (ex.started < ex.addrs.length) {
+				InetSocketAddress addr = ex.addrs[ex.started++];
+				SocketChannel ch = null;
+				try {
+					ch = SocketChannel.open();
+					if (!ex.add( ch ))
+						return;
+					ch.configureBlocking( false );
+					if (ch.connect( addr )) {
+						connected( ex, ch );
+						ch.register( selector, SelectionKey.OP_WRITE, ex );
+					}
+					else {
+						ch.register( selector, SelectionKey.OP_CONNECT, ex );
+						ex.nextAttempt = now + HappyEyeballs.ATTEMPT_DELAY;
+						schedule( ex );
+					}
+					return;
+				}
+				catch (IOException e) {
+					ex.failed++;
+					ex.lastError = e;
+					if (null != ch)
+						ex.drop( ch );
+				}
+			}
+			if (ex.failed >= ex.started)
+				ex.fail( (null != ex.lastError) ? ex.lastError : new ConnectException( "No address to connect" ) );
+		}
+
+		private void connected(Exchange ex, SocketChannel ch) {
+			ex.connected = true;
+			ex.keep( ch );
+			ex.extend( System.currentTimeMillis(), ex.readTimeout );
+			schedule( ex );
+		}
+
+		/**
+		 * Queues a timer for the next time the exchange is due: its deadline, or the next connect of its race. A later
+		 * deadline, as each read gives, needs no new timer: the one queued finds it when it is due.
+		 */
+		private void schedule(Exchange ex) {
+			long at = ex.deadline;
+			if (!ex.connected && ex.started < ex.addrs.length)
+				at = Math.min( at, ex.nextAttempt );
+			if (at < ex.timerAt) {
+				ex.timerAt = at;
+				timers.add( new Timer( at, ex ) );
+			}
+		}
+
+		private void handle(SelectionKey key) {
+			Exchange ex = ( Exchange ) key.attachment();
+			SocketChannel ch = ( SocketChannel ) key.channel();
+			try {
+				if (!key.isValid() || ex.isDone()) {
+					key.cancel();
+					return;
+				}
+				if (key.isConnectable()) {
+					try {
+						ch.finishConnect();
+					}
+					catch (IOException e) {
+						// Only this address failed, the race goes on with the others.
+						key.cancel();
+						ex.failed++;
+						ex.lastError = e;
+						ex.drop( ch );
+						attempt( ex, System.currentTimeMillis() );
+						return;
+					}
+					connected( ex, ch );
+					key.interestOps( SelectionKey.OP_WRITE );
+				}
+				else if (key.isWritable()) {
+					ch.write( ex.out );
+					if (!ex.out.hasRemaining()) {
+						key.interestOps( SelectionKey.OP_READ );
+					}
+				}
+				else if (key.isReadable()) {
+					buffer.clear();
+					int n = ch.read( buffer );
+					if (n < 0) {
+						key.cancel();
+						ex.finish();
+						return;
+					}
+					buffer.flip();
+					if (!ex.receive( buffer )) {
+						key.cancel();
+						return;
+					}
+					ex.extend( System.currentTimeMillis(), ex.readTimeout );
+				}
+			}
+			catch (IOException e) {
+				key.cancel();
+				ex.fail( e );
+			}
+			catch (RuntimeException e) {
+				// A failing receiver ends its exchange, not the selector thread.
+				key.cancel();
+				ex.fail( new IOException( e ) );
+			}
+		}
+
+		// Fails the exchanges past their deadline and starts the connects due; only the timers due are looked at.
+		private void expire(long now) {
+			Timer t = null;
+			while ((t = timers.peek()) != null && t.at <= now) {
+				timers.poll();
+				Exchange ex = t.ex;
+				// Over, or an earlier timer took the place of this one
+				if (ex.isDone() || t.at != ex.timerAt)
+					continue;
+				ex.timerAt = Long.MAX_VALUE;
+				if (now >= ex.deadline) {
+					if (ex.connected)
+						ex.fail( new SocketTimeoutException( "Read timed out" ) );
+					else
+						ex.fail( new ConnectException( "Connect timed out" ) );
+					continue;
+				}
+				if (!ex.connected && ex.started < ex.addrs.length && now >= ex.nextAttempt)
+					attempt( ex, now );
+				if (!ex.isDone())
+					schedule( ex );
+			}
+		}
+
+		private void close() {
+			for (SelectionKey key : selector.keys()) {
+				(( Exchange ) key.attachment()).fail( new IOException( "NioTransport is shut down" ) );
+			}
+			Exchange ex = null;
+			while ((ex = pending.poll()) != null) {
+				ex.fail( new IOException( "NioTransport is shut down" ) );
+			}
+			timers.clear();
+			try {
+				selector.close();
+			}
+			catch (IOException e) {
+				// do nothing
+			}
+		}
+	}
+
+	private static class Timer implements Comparable<Timer> {
+		final long		at;
+		final Exchange	ex;
+
+		Timer(long at, Exchange ex) {
+			this.at = at;
+			this.ex = ex;
+		}
+
+		@Override
+		public int compareTo(Timer o) {
+			return (at < o.at) ? -1 : ((at == o.at) ? 0 : 1);
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.jwhois.core;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The contact prefixes of a server compiled into a trie. {@link #match(String)} walks a line once and gives the same
+ * answer as testing line.trim().toLowerCase().startsWith( key ) for each key in the order of the map, first match
+ * wins: of all keys found along the walk, the one earliest in the map.
+ */
+final class PrefixMatcher {
+	private final Node		root	= new Node();
+	private final String[]	values;
+
+	/**
+	 * @param entries
+	 *            lower case prefix to value, in the order to test them
+	 */
+	PrefixMatcher(Map<String, String> entries) {
+		this.values = new String[entries.size()];
+		int rank = 0;
+		for (Map.Entry<String, String> e : entries.entrySet()) {
+			Node n = root;
+			String key = e.getKey();
+			for (int i = 0; i < key.length(); i++) {
+				n = n.add( key.charAt( i ) );
+			}
+			if (n.rank < 0)
+				n.rank = rank;
+			values[rank++] = e.getValue();
+		}
+	}
+
+	/**
+	 * @param line
+	 * @return the value of the first key the trimmed, lower cased line starts with, null if none
+	 */
+	String match(String line) {
+		int s = 0, e = line.length();
+		while (s < e && line.charAt( s ) <= ' ') {
+			s++;
+		}
+		while (e > s && line.charAt( e - 1 ) <= ' ') {
+			e--;
+		}
+
+		// ASCII lower cases on its own, except in the locales with special casing rules for 'I'.
+		String lang = Locale.getDefault().getLanguage();
+		if ("tr".equals( lang ) || "az".equals( lang ) || "lt".equals( lang ))
+			return walk( line.trim().toLowerCase() );
+
+		int best = root.rank;
+		Node n = root;
+		for (int i = s; i < e; i++) {
+			char c = line.charAt( i );
+			if (c >= 0x80)
+				return walk( line.trim().toLowerCase() );
+			if (c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			n = n.get( c );
+			if (null == n)
+				break;
+			if (n.rank >= 0 && (best < 0 || n.rank < best))
+				best = n.rank;
+		}
+		return (best < 0) ? null : values[best];
+	}
+
+	/**
+	 * Walks a line lower cased by String.toLowerCase(), which may change its length.
+	 */
+	private String walk(String test) {
+		int best = root.rank;
+		Node n = root;
+		for (int i = 0; i < test.length(); i++) {
+			n = n.get( test.charAt( i ) );
+			if (null == n)
+				break;
+			if (n.rank >= 0 && (best < 0 || n.rank < best))
+				best = n.rank;
+		}
+		return (best < 0) ? null : values[best];
+	}
+
+	private static class Node {
+		private char[]	labels		= new char[0];
+		private Node[]	children	= new Node[0];
+		private int		rank		= -1;
+
+		Node get(char c) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == c)
+					return children[i];
+			}
+			return null;
+		}
+
+		Node add(char c) {
+			Node n = get( c );
+			if (null != n)
+				return n;
+			n = new Node();
+			int len = labels.length;
+			char[] l = new char[len + 1];
+			Node[] ch = new Node[len + 1];
+			System.arraycopy( labels, 0, l, 0, len );
+			System.arraycopy( children, 0, ch, 0, len );
+			l[len] = c;
+			ch[len] = n;
+			labels = l;
+			children = ch;
+			return n;
+		}
+	}
+
+}
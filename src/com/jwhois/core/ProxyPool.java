@@ -0,0 +1,236 @@
+package com.jwhois.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pool of SOCKS proxies with health scores. The success rate and the connect and first byte latencies are tracked per
+ * proxy, and per proxy and WHOIS server, as moving averages. A proxy is picked at random, weighted by its success rate
+ * and the inverse of its latency, using the figures of the server once there are enough of them.
+ *
+ * A proxy failing several times in a row, or whose success rate drops below one half, is quarantined, for the whole
+ * pool or only for the server it failed against. The quarantine doubles on each relapse up to a maximum, and is reset
+ * by a success. If every proxy is quarantined, the one released first is used.
+ *
+ * Install it with {@link Utility#setProxyFactory(IProxy)}.
+ */
+public class ProxyPool implements IProxyPool {
+	private static final double						ALPHA				= 0.2;
+	private static final int						MIN_SAMPLES			= 5;
+	private static final int						MAX_FAILURES		= 3;
+	private static final double						MIN_SUCCESS_RATE	= 0.5;
+	private static final double						MIN_WEIGHT_RATE		= 0.05;
+	private static final long						UNKNOWN_LATENCY		= 500;
+
+	private final ConcurrentMap<String, Health>		proxies;
+	private volatile long							quarantine			= 30 * 1000;
+	private volatile long							maxQuarantine		= 10 * 60 * 1000;
+
+	public ProxyPool() {
+		this.proxies = new ConcurrentHashMap<String, Health>();
+	}
+
+	/**
+	 * @param proxies
+	 *            as "host:port"
+	 */
+	public ProxyPool(Collection<String> proxies) {
+		this();
+		for (String p : proxies) {
+			add( p );
+		}
+	}
+
+	/**
+	 * @param proxy
+	 *            as "host:port"
+	 */
+	public void add(String proxy) {
+		proxies.putIfAbsent( proxy, new Health() );
+	}
+
+	public void remove(String proxy) {
+		proxies.remove( proxy );
+	}
+
+	public List<String> getProxies() {
+		return new ArrayList<String>( proxies.keySet() );
+	}
+
+	/**
+	 * set the first quarantine of a failing proxy and the maximum it doubles up to, in milliseconds
+	 *
+	 * @param quarantine
+	 * @param maxQuarantine
+	 */
+	public void setQuarantine(long quarantine, long maxQuarantine) {
+		this.quarantine = Math.max( 0, quarantine );
+		this.maxQuarantine = Math.max( this.quarantine, maxQuarantine );
+	}
+
+	/**
+	 * @param proxy
+	 * @return true if the proxy is quarantined for the whole pool
+	 */
+	public boolean isQuarantined(String proxy) {
+		Health h = proxies.get( proxy );
+		return null != h && h.releaseAt( System.currentTimeMillis() ) > 0;
+	}
+
+	@Override
+	public String getProxy() {
+		return getProxy( null );
+	}
+
+	@Override
+	public String getProxy(String server) {
+		long now = System.currentTimeMillis();
+		List<String> names = new ArrayList<String>( proxies.size() );
+		List<Double> weights = new ArrayList<Double>( proxies.size() );
+		double total = 0;
+
+		String fallback = null;
+		long fallbackAt = Long.MAX_VALUE;
+		for (Map.Entry<String, Health> e : proxies.entrySet()) {
+			Health h = e.getValue();
+			Health hs = (null == server) ? null : h.servers.get( server );
+			long release = Math.max( h.releaseAt( now ), (null == hs) ? 0 : hs.releaseAt( now ) );
+			if (release > 0) {
+				if (release < fallbackAt) {
+					fallbackAt = release;
+					fallback = e.getKey();
+				}
+				continue;
+			}
+
+			double w = ((null != hs && hs.samples() >= MIN_SAMPLES) ? hs : h).weight();
+			names.add( e.getKey() );
+			weights.add( w );
+			total += w;
+		}
+
+		if (names.isEmpty()) {
+			if (null != fallback)
+				Utility.logDebug( "ProxyPool::getProxy all proxies quarantined, using: <proxy:" + fallback + "><server:"
+						+ server + ">", null );
+			return fallback;
+		}
+
+		double r = ThreadLocalRandom.current().nextDouble() * total;
+		for (int i = 0; i < names.size(); i++) {
+			r -= weights.get( i );
+			if (r < 0)
+				return names.get( i );
+		}
+		return names.get( names.size() - 1 );
+	}
+
+	@Override
+	public void report(String proxy, String server, boolean success, long connectMillis, long firstByteMillis) {
+		Health h = proxies.get( proxy );
+		if (null == h)
+			return;
+
+		long now = System.currentTimeMillis();
+		if (h.update( now, success, connectMillis, firstByteMillis, quarantine, maxQuarantine ))
+			Utility.logInfo( "ProxyPool::report proxy quarantined: <proxy:" + proxy + "><server:" + server + ">" );
+
+		if (null == server)
+			return;
+		Health hs = h.servers.get( server );
+		if (null == hs) {
+			Health created = new Health();
+			hs = h.servers.putIfAbsent( server, created );
+			if (null == hs)
+				hs = created;
+		}
+		if (hs.update( now, success, connectMillis, firstByteMillis, quarantine, maxQuarantine ))
+			Utility.logInfo( "ProxyPool::report proxy quarantined for server: <proxy:" + proxy + "><server:" + server
+					+ ">" );
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Health> e : proxies.entrySet()) {
+			sb.append( e.getKey() ).append( ' ' ).append( e.getValue() ).append( '\n' );
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Health of a proxy, for the whole pool or for one server.
+	 */
+	private static class Health {
+		final ConcurrentMap<String, Health>	servers		= new ConcurrentHashMap<String, Health>();
+
+		private int							samples;
+		private double						successRate	= 1;
+		private double						connect		= -1;
+		private double						firstByte	= -1;
+		private int							failures;
+		private long						backoff;
+		private long						until;
+
+		synchronized int samples() {
+			return samples;
+		}
+
+		/**
+		 * @return the end of the quarantine, 0 if none
+		 */
+		synchronized long releaseAt(long now) {
+			return (until > now) ? until : 0;
+		}
+
+		synchronized double weight() {
+			double latency = 0;
+			latency += (connect < 0) ? UNKNOWN_LATENCY / 2 : connect;
+			latency += (firstByte < 0) ? UNKNOWN_LATENCY / 2 : firstByte;
+			double rate = Math.max( MIN_WEIGHT_RATE, successRate );
+			return rate * rate / Math.max( 1, latency );
+		}
+
+		/**
+		 * @return true if the proxy went into quarantine
+		 */
+		synchronized boolean update(long now, boolean success, long connectMillis, long firstByteMillis,
+				long quarantine, long maxQuarantine) {
+			samples++;
+			successRate += ALPHA * ((success ? 1 : 0) - successRate);
+			if (connectMillis >= 0)
+				connect = (connect < 0) ? connectMillis : connect + ALPHA * (connectMillis - connect);
+			if (firstByteMillis >= 0)
+				firstByte = (firstByte < 0) ? firstByteMillis : firstByte + ALPHA * (firstByteMillis - firstByte);
+
+			if (success) {
+				failures = 0;
+				backoff = 0;
+				return false;
+			}
+
+			failures++;
+			if (failures < MAX_FAILURES && (samples < MIN_SAMPLES || successRate >= MIN_SUCCESS_RATE))
+				return false;
+
+			// Once released it is on probation: the next failure sends it back for twice as long.
+			backoff = (backoff == 0) ? quarantine : Math.min( maxQuarantine, backoff * 2 );
+			until = now + backoff;
+			failures = 0;
+			successRate = MIN_SUCCESS_RATE;
+			return true;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return String.format( "samples=%d success=%.2f connect=%.0fms firstByte=%.0fms%s", samples, successRate,
+					connect, firstByte, (until > System.currentTimeMillis()) ? " quarantined" : "" );
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+package com.jwhois.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per host name query budget: a token bucket which spaces the queries out, plus a quota of queries per UTC day.
+ *
+ * The limits are read from WhoisLimits.xml unless they are given to the constructor.
+ */
+public class RateLimiter {
+	private static final long					DAY	= 24L * 60 * 60 * 1000;
+
+	private final Map<String, Limit>			limits;
+	private final ConcurrentMap<String, Bucket>	buckets;
+
+	/**
+	 * Creates a limiter with the limits of WhoisLimits.xml.
+	 */
+	public RateLimiter() {
+		this( null );
+	}
+
+	/**
+	 * Creates a limiter with the given limits. The entry "default" applies to hosts which are not in the map.
+	 * 
+	 * @param limits
+	 */
+	public RateLimiter(Map<String, Limit> limits) {
+		this.limits = limits;
+		this.buckets = new ConcurrentHashMap<String, Bucket>();
+	}
+
+	/**
+	 * Waits until a query to the host is allowed and takes the permit, however long that takes.
+	 * 
+	 * @param host
+	 * @return false if the daily quota of the host is used up or the thread got interrupted
+	 */
+	public boolean acquire(String host) {
+		return acquire( host, Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+	}
+
+	/**
+	 * Waits until a query to the host is allowed and takes the permit, if that is within the timeout. No permit is
+	 * taken when the wait would be longer.
+	 * 
+	 * @param host
+	 * @param timeout
+	 *            the longest wait
+	 * @param unit
+	 * @return false if the wait would be longer than the timeout, the daily quota of the host is used up or the
+	 *         thread got interrupted
+	 */
+	public boolean acquire(String host, long timeout, TimeUnit unit) {
+		long wait = reserve( host, unit.toNanos( timeout ) );
+		if (wait < 0)
+			return false;
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep( wait );
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Takes the permit of a query to the host without waiting for it.
+	 * 
+	 * @param host
+	 * @param maxWait
+	 *            the longest wait in nanoseconds
+	 * @return the nanoseconds to wait before the query, -1 if no permit was taken: the wait would be longer than
+	 *         maxWait or the daily quota is used up
+	 */
+	long reserve(String host, long maxWait) {
+		Bucket bucket = getBucket( host );
+		if (null == bucket)
+			return 0;
+		return bucket.reserve( System.currentTimeMillis(), System.nanoTime(), maxWait );
+	}
+
+	/**
+	 * @param host
+	 * @return the number of queries sent to the host today
+	 */
+	public long getUsedToday(String host) {
+		Bucket bucket = getBucket( host );
+		if (null == bucket)
+			return 0;
+		return bucket.usedToday( System.currentTimeMillis() );
+	}
+
+	/**
+	 * @param host
+	 * @return the number of queries left for the host today, -1 if it has no daily quota
+	 */
+	public long getRemainingToday(String host) {
+		Bucket bucket = getBucket( host );
+		if (null == bucket || bucket.limit.daily <= 0)
+			return -1;
+		return Math.max( 0, bucket.limit.daily - bucket.usedToday( System.currentTimeMillis() ) );
+	}
+
+	private Bucket getBucket(String host) {
+		if (Utility.isEmpty( host ))
+			return null;
+		host = host.toLowerCase();
+
+		Bucket bucket = buckets.get( host );
+		if (null == bucket) {
+			Limit limit = getLimit( host );
+			if (null == limit)
+				return null;
+			bucket = new Bucket( limit );
+			Bucket old = buckets.putIfAbsent( host, bucket );
+			if (null != old)
+				bucket = old;
+		}
+		return bucket;
+	}
+
+	private Limit getLimit(String host) {
+		if (null == limits)
+			return XMLHelper.getLimit( host );
+		Limit limit = limits.get( host );
+		if (null == limit)
+			limit = limits.get( "default" );
+		return limit;
+	}
+
+	/**
+	 * The budget of one host.
+	 */
+	public static class Limit {
+		final double	perMinute;
+		final int		burst;
+		final long		daily;
+
+		/**
+		 * @param perMinute
+		 *            queries per minute
+		 * @param burst
+		 *            queries which may be sent back to back
+		 * @param daily
+		 *            queries per UTC day, 0 for no quota
+		 */
+		public Limit(double perMinute, int burst, long daily) {
+			this.perMinute = perMinute;
+			this.burst = Math.max( 1, burst );
+			this.daily = daily;
+		}
+	}
+
+	private static class Bucket {
+		final Limit			limit;
+		final double		perNano;
+		final ReentrantLock	lock;
+		double				tokens;
+		long				refilled;
+		long				day;
+		long				used;
+
+		Bucket(Limit limit) {
+			this.limit = limit;
+			this.perNano = limit.perMinute / TimeUnit.MINUTES.toNanos( 1 );
+			this.lock = new ReentrantLock();
+			this.tokens = limit.burst;
+			this.refilled = System.nanoTime();
+		}
+
+		/**
+		 * Takes a permit. Tokens may go negative, so concurrent callers queue up behind each other.
+		 * 
+		 * @return the nanoseconds to wait before the query, -1 if the daily quota is used up or the wait would be
+		 *         longer than maxWait; no permit is taken then
+		 */
+		long reserve(long now, long nanos, long maxWait) {
+			lock.lock();
+			try {
+				if (limit.daily > 0) {
+					rollDay( now );
+					if (used >= limit.daily)
+						return -1;
+				}
+
+				tokens = Math.min( limit.burst, tokens + (nanos - refilled) * perNano );
+				refilled = nanos;
+				long wait = (tokens >= 1) ? 0 : ( long ) ((1 - tokens) / perNano);
+				if (wait > maxWait)
+					return -1;
+				used++;
+				tokens -= 1;
+				return wait;
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		long usedToday(long now) {
+			lock.lock();
+			try {
+				rollDay( now );
+				return used;
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		private void rollDay(long now) {
+			long today = now / DAY;
+			if (today != day) {
+				day = today;
+				used = 0;
+			}
+		}
+	}
+
+}
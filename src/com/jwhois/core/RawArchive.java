@@ -0,0 +1,486 @@
+package com.jwhois.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped archive of the raw answers of the lookups. Every finished lookup is one record: the
+ * time, the domain and, per hop, the server name and the raw lines handed to {@link WhoisMap#parse(String)}.
+ *
+ * {@link #reparse(BiConsumer)} replays the whole archive through the parser on a fork-join pool, without any network,
+ * e.g. to check a change of WhoisTranslates.xml against the answers of yesterday.
+ *
+ * File layout: a header of {@value #HEADER} bytes (magic, version, committed end), then the records, each one an int
+ * length and an int CRC32 of the payload which follows. The file grows by mapped chunks; the zero filled tail of the
+ * last chunk ends the records. Records written after the last {@link #flush()} are recovered on open as long as their
+ * checksum is valid.
+ *
+ * Install it with {@link Utility#setRawArchive(RawArchive)}.
+ */
+public class RawArchive {
+	static final int						HEADER		= 32;
+	private static final int				MAGIC		= 0x4A575241;										// JWRA
+	private static final int				VERSION		= 1;
+	private static final int				CHUNK		= 16 << 20;
+	private static final int				WINDOW		= 256 << 20;
+	private static final int				SEGMENT		= 1024;
+	private static final int				THRESHOLD	= 64;
+	private static final Charset			UTF8		= Charset.forName( "UTF-8" );
+
+	// The lookup ended with the fix of regyinfo.hasrecord, and without rawdata.
+	static final int						FLAG_FIXED		= 1;
+	static final int						FLAG_NO_RAWDATA	= 2;
+
+	private final File						file;
+	private final RandomAccessFile			raf;
+	private final FileChannel				channel;
+	private final ReentrantLock				lock		= new ReentrantLock();
+
+	private MappedByteBuffer				out;
+	private long							end;
+
+	/**
+	 * Opens or creates the archive.
+	 *
+	 * @param file
+	 * @throws IOException
+	 *             if the file is not an archive
+	 */
+	public RawArchive(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile( file, "rw" );
+		this.channel = raf.getChannel();
+		try {
+			if (channel.size() < HEADER) {
+				end = HEADER;
+				writeHeader();
+			}
+			else {
+				ByteBuffer h = ByteBuffer.allocate( HEADER );
+				channel.read( h, 0 );
+				if (h.getInt( 0 ) != MAGIC || h.getInt( 4 ) != VERSION)
+					throw new IOException( "Not a raw archive: " + file );
+				end = recover( Math.max( HEADER, Math.min( h.getLong( 8 ), channel.size() ) ) );
+			}
+		}
+		catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the size of the records in bytes
+	 */
+	public long size() {
+		lock.lock();
+		try {
+			return end - HEADER;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * One archived lookup.
+	 */
+	public static class Record {
+		private final long					offset;
+		private final long					time;
+		private final int					flags;
+		private final String				domain;
+		private final List<String>			servers;
+		private final List<List<String>>	rawdata;
+
+		Record(long offset, long time, int flags, String domain, List<String> servers, List<List<String>> rawdata) {
+			this.offset = offset;
+			this.time = time;
+			this.flags = flags;
+			this.domain = domain;
+			this.servers = Collections.unmodifiableList( servers );
+			this.rawdata = Collections.unmodifiableList( rawdata );
+		}
+
+		/**
+		 * @return the position of the record in the archive
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return the time of the lookup, in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		int getFlags() {
+			return flags;
+		}
+
+		public String getDomain() {
+			return domain;
+		}
+
+		/**
+		 * @return the servers of the hops, the registry first
+		 */
+		public List<String> getServers() {
+			return servers;
+		}
+
+		/**
+		 * @return the raw lines of the hops, in the order of {@link #getServers()}
+		 */
+		public List<List<String>> getRawdata() {
+			return rawdata;
+		}
+	}
+
+	/**
+	 * Appends a lookup.
+	 *
+	 * @param domain
+	 * @param servers
+	 *            the servers of the hops
+	 * @param rawdata
+	 *            the raw lines of each hop
+	 * @param flags
+	 * @throws IOException
+	 */
+	void append(String domain, List<String> servers, List<List<String>> rawdata, int flags) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream( 4096 );
+		DataOutputStream dos = new DataOutputStream( bytes );
+		dos.writeInt( 0 );
+		dos.writeInt( 0 );
+		dos.writeLong( System.currentTimeMillis() );
+		dos.writeByte( flags );
+		writeString( dos, domain );
+		dos.writeShort( servers.size() );
+		for (int i = 0; i < servers.size(); i++) {
+			writeString( dos, servers.get( i ) );
+			List<String> lines = rawdata.get( i );
+			dos.writeInt( lines.size() );
+			for (String line : lines) {
+				writeString( dos, line );
+			}
+		}
+		dos.flush();
+
+		ByteBuffer rec = ByteBuffer.wrap( bytes.toByteArray() );
+		CRC32 crc = new CRC32();
+		crc.update( rec.array(), 8, rec.limit() - 8 );
+		rec.putInt( 0, rec.limit() - 8 );
+		rec.putInt( 4, ( int ) crc.getValue() );
+
+		lock.lock();
+		try {
+			if (!channel.isOpen())
+				throw new IOException( "Raw archive closed: " + file );
+			if (null == out || out.remaining() < rec.limit())
+				out = channel.map( FileChannel.MapMode.READ_WRITE, end, Math.max( CHUNK, rec.limit() ) );
+			out.put( rec );
+			end += rec.limit();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Forces the records to the disk and commits the end of the archive into the header.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			if (null != out)
+				out.force();
+			writeHeader();
+			channel.force( false );
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Flushes and closes the archive, cutting the unused tail of the last chunk.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (!channel.isOpen())
+				return;
+			flush();
+			out = null;
+			try {
+				channel.truncate( end );
+			}
+			catch (IOException e) {
+				// Some platforms refuse to truncate a mapped file; the zero filled tail is harmless.
+				Utility.logDebug( "RawArchive::close truncate: <file:" + file + ">", e );
+			}
+			raf.close();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replays all records through the parser on the common fork-join pool.
+	 *
+	 * @param sink
+	 *            receives each record with its new WhoisMap, concurrently from the pool threads
+	 * @return the number of records
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public long reparse(BiConsumer<Record, WhoisMap> sink) throws IOException, InterruptedException {
+		return reparse( ForkJoinPool.commonPool(), sink );
+	}
+
+	/**
+	 * Replays all records through the parser on the given fork-join pool. One thread walks the archive and hands out
+	 * segments of records; the segments are split further among the pool, and decoded and parsed there. The records
+	 * appended during the run are not replayed.
+	 *
+	 * @param pool
+	 * @param sink
+	 *            receives each record with its new WhoisMap, concurrently from the pool threads
+	 * @return the number of records
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public long reparse(ForkJoinPool pool, final BiConsumer<Record, WhoisMap> sink) throws IOException,
+			InterruptedException {
+		long limit;
+		lock.lock();
+		try {
+			limit = end;
+		}
+		finally {
+			lock.unlock();
+		}
+
+		// Bound the segments in flight, the walk is much faster than the parser.
+		final int permits = pool.getParallelism() * 4;
+		final Semaphore inflight = new Semaphore( permits );
+		final AtomicLong count = new AtomicLong();
+
+		MappedByteBuffer win = null;
+		long base = HEADER;
+		int[] offsets = new int[SEGMENT];
+		int n = 0;
+		long pos = HEADER;
+		while (pos < limit) {
+			if (null == win || pos + 8 > base + win.limit()) {
+				n = submit( pool, inflight, win, base, offsets, n, sink, count );
+				base = pos;
+				win = channel.map( FileChannel.MapMode.READ_ONLY, base, Math.min( WINDOW, limit - base ) );
+			}
+			int len = win.getInt( ( int ) (pos - base) );
+			if (len <= 0)
+				break;
+			if (pos + 8 + len > base + win.limit()) {
+				n = submit( pool, inflight, win, base, offsets, n, sink, count );
+				base = pos;
+				win = channel.map( FileChannel.MapMode.READ_ONLY, base, Math.min( Math.max( WINDOW, 8L + len ),
+						limit - base ) );
+				if (8L + len > win.limit())
+					break;
+			}
+			offsets[n++] = ( int ) (pos - base);
+			if (n == SEGMENT) {
+				n = submit( pool, inflight, win, base, offsets, n, sink, count );
+				offsets = new int[SEGMENT];
+			}
+			pos += 8 + len;
+		}
+		submit( pool, inflight, win, base, offsets, n, sink, count );
+
+		// Wait for the segments in flight.
+		inflight.acquire( permits );
+		inflight.release( permits );
+		return count.get();
+	}
+
+	private static int submit(ForkJoinPool pool, final Semaphore inflight, ByteBuffer win, long base, int[] offsets,
+			int n, BiConsumer<Record, WhoisMap> sink, AtomicLong count) throws InterruptedException {
+		if (n == 0)
+			return 0;
+		inflight.acquire();
+		final Segment seg = new Segment( win, base, offsets, 0, n, sink, count );
+		pool.execute( new RecursiveAction() {
+			private static final long	serialVersionUID	= 1L;
+
+			@Override
+			protected void compute() {
+				try {
+					seg.invoke();
+				}
+				finally {
+					inflight.release();
+				}
+			}
+		} );
+		return 0;
+	}
+
+	/**
+	 * The records of one mapped window, split in halves down to {@value RawArchive#THRESHOLD} records.
+	 */
+	private static class Segment extends RecursiveAction {
+		private static final long					serialVersionUID	= 1L;
+
+		private final ByteBuffer					win;
+		private final long							base;
+		private final int[]							offsets;
+		private final int							from;
+		private final int							to;
+		private final BiConsumer<Record, WhoisMap>	sink;
+		private final AtomicLong					count;
+
+		Segment(ByteBuffer win, long base, int[] offsets, int from, int to, BiConsumer<Record, WhoisMap> sink,
+				AtomicLong count) {
+			this.win = win;
+			this.base = base;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+			this.sink = sink;
+			this.count = count;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll( new Segment( win, base, offsets, from, mid, sink, count ), new Segment( win, base, offsets,
+						mid, to, sink, count ) );
+				return;
+			}
+
+			ByteBuffer buf = win.duplicate();
+			for (int i = from; i < to; i++) {
+				Record rec = null;
+				try {
+					buf.position( offsets[i] );
+					rec = read( buf, base + offsets[i] );
+					sink.accept( rec, WhoisEngine.replay( rec ) );
+					count.incrementAndGet();
+				}
+				catch (RuntimeException e) {
+					Utility.logWarn( "RawArchive::reparse RuntimeException: <offset:" + (base + offsets[i])
+							+ ((null == rec) ? "" : " domain:" + rec.getDomain()) + ">", e );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes the record at the position of the buffer.
+	 */
+	static Record read(ByteBuffer buf, long offset) {
+		buf.getInt();
+		buf.getInt();
+		long time = buf.getLong();
+		int flags = buf.get() & 0xFF;
+		String domain = readString( buf );
+		int hops = buf.getShort() & 0xFFFF;
+		List<String> servers = new ArrayList<String>( hops );
+		List<List<String>> rawdata = new ArrayList<List<String>>( hops );
+		for (int i = 0; i < hops; i++) {
+			servers.add( readString( buf ) );
+			int size = buf.getInt();
+			List<String> lines = new ArrayList<String>( size );
+			for (int j = 0; j < size; j++) {
+				lines.add( readString( buf ) );
+			}
+			rawdata.add( lines );
+		}
+		return new Record( offset, time, flags, domain, servers, rawdata );
+	}
+
+	private static void writeString(DataOutputStream dos, String s) throws IOException {
+		byte[] b = s.getBytes( UTF8 );
+		dos.writeInt( b.length );
+		dos.write( b );
+	}
+
+	private static String readString(ByteBuffer buf) {
+		int len = buf.getInt();
+		String s;
+		if (buf.hasArray()) {
+			s = new String( buf.array(), buf.arrayOffset() + buf.position(), len, UTF8 );
+		}
+		else {
+			byte[] b = new byte[len];
+			buf.get( b );
+			return new String( b, UTF8 );
+		}
+		buf.position( buf.position() + len );
+		return s;
+	}
+
+	private void writeHeader() throws IOException {
+		ByteBuffer h = ByteBuffer.allocate( HEADER );
+		h.putInt( MAGIC ).putInt( VERSION ).putLong( end );
+		h.clear();
+		channel.write( h, 0 );
+	}
+
+	/**
+	 * Walks the records after the committed end, up to the first one which is missing or torn.
+	 *
+	 * @return the end of the valid records
+	 */
+	private long recover(long pos) throws IOException {
+		long size = channel.size();
+		ByteBuffer head = ByteBuffer.allocate( 8 );
+		CRC32 crc = new CRC32();
+		while (pos + 8 <= size) {
+			head.clear();
+			channel.read( head, pos );
+			int len = head.getInt( 0 );
+			if (len <= 0 || pos + 8 + len > size)
+				break;
+			ByteBuffer payload = ByteBuffer.allocate( len );
+			channel.read( payload, pos + 8 );
+			crc.reset();
+			crc.update( payload.array(), 0, len );
+			if (( int ) crc.getValue() != head.getInt( 4 ))
+				break;
+			pos += 8 + len;
+		}
+		return pos;
+	}
+
+}
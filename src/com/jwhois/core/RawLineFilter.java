@@ -0,0 +1,11 @@
+package com.jwhois.core;
+
+/**
+ * Optional companion of {@link LineFilter}: decides on the raw UTF-8 bytes of a WHOIS line, so lines which are skipped
+ * never get decoded. It must give the same answer as {@link LineFilter#skipLine(String)} on the decoded line.
+ */
+public interface RawLineFilter {
+
+	boolean skipLine(byte[] buf, int off, int len);
+
+}
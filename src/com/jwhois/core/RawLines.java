@@ -0,0 +1,179 @@
+package com.jwhois.core;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The lines of a rawdata, read only, kept as one UTF-8 buffer and the offsets of the lines in it. A line of ASCII
+ * costs its length in bytes and one offset, where a String costs twice its length and two objects. Each
+ * {@link #get(int)} decodes a new String.
+ *
+ * The buffer may be deflated, for records which are seldom read: it is inflated on the first read and the inflated
+ * copy kept as long as memory allows. A line that UTF-8 can not give back (a lone surrogate) or a null line is kept
+ * as is.
+ */
+final class RawLines extends AbstractList<String> implements RandomAccess {
+	private static final Charset			UTF8	= Charset.forName( "UTF-8" );
+
+	// marks a null line among the lines kept as is
+	private static final String				NULL	= new String();
+
+	private final byte[]					data;
+	private final int						length;
+	private final boolean					deflated;
+	private final int[]						offsets;
+	private final String[]					verbatim;
+	private SoftReference<byte[]>			inflated;
+
+	private RawLines(byte[] data, int length, boolean deflated, int[] offsets, String[] verbatim) {
+		this.data = data;
+		this.length = length;
+		this.deflated = deflated;
+		this.offsets = offsets;
+		this.verbatim = verbatim;
+	}
+
+	/**
+	 * @param lines
+	 *            The lines of a rawdata.
+	 * @return The compact lines, the same instance if they are already; null if the lines are null.
+	 */
+	static RawLines of(List<String> lines) {
+		if (null == lines || lines instanceof RawLines)
+			return ( RawLines ) lines;
+
+		int n = lines.size();
+		int[] offsets = new int[n + 1];
+		String[] verbatim = null;
+		ByteArrayOutputStream out = new ByteArrayOutputStream( 64 * n + 16 );
+		int i = 0;
+		for (String line : lines) {
+			offsets[i] = out.size();
+			if (!encode( line, out )) {
+				if (null == verbatim)
+					verbatim = new String[n];
+				verbatim[i] = (null == line) ? NULL : line;
+			}
+			i++;
+		}
+		offsets[n] = out.size();
+		return new RawLines( out.toByteArray(), offsets[n], false, offsets, verbatim );
+	}
+
+	/**
+	 * @return The same lines with the buffer deflated, this if it is already.
+	 */
+	RawLines deflate() {
+		if (deflated)
+			return this;
+
+		Deflater d = new Deflater( Deflater.BEST_SPEED );
+		try {
+			d.setInput( data, 0, length );
+			d.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream( length / 4 + 16 );
+			byte[] buf = new byte[4096];
+			while (!d.finished()) {
+				int k = d.deflate( buf );
+				out.write( buf, 0, k );
+			}
+			// Nothing gained, keep it plain.
+			if (out.size() >= length)
+				return this;
+			return new RawLines( out.toByteArray(), length, true, offsets, verbatim );
+		}
+		finally {
+			d.end();
+		}
+	}
+
+	boolean isDeflated() {
+		return deflated;
+	}
+
+	@Override
+	public String get(int i) {
+		if (i < 0 || i >= offsets.length - 1)
+			throw new IndexOutOfBoundsException( "Index: " + i + ", Size: " + size() );
+		if (null != verbatim && null != verbatim[i])
+			return (NULL == verbatim[i]) ? null : verbatim[i];
+		return new String( bytes(), offsets[i], offsets[i + 1] - offsets[i], UTF8 );
+	}
+
+	@Override
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Writes a line as UTF-8.
+	 *
+	 * @return false if the line must be kept as is
+	 */
+	private static boolean encode(String line, ByteArrayOutputStream out) {
+		if (null == line)
+			return false;
+
+		int len = line.length();
+		int ascii = 0;
+		while (ascii < len && line.charAt( ascii ) < 0x80) {
+			ascii++;
+		}
+		// UTF-8 would lose a lone surrogate.
+		for (int j = ascii; j < len; j++) {
+			char c = line.charAt( j );
+			if (Character.isHighSurrogate( c ) && j + 1 < len && Character.isLowSurrogate( line.charAt( j + 1 ) ))
+				j++;
+			else if (Character.isSurrogate( c ))
+				return false;
+		}
+
+		for (int j = 0; j < ascii; j++) {
+			out.write( line.charAt( j ) );
+		}
+		if (ascii < len) {
+			byte[] b = line.substring( ascii ).getBytes( UTF8 );
+			out.write( b, 0, b.length );
+		}
+		return true;
+	}
+
+	private byte[] bytes() {
+		if (!deflated)
+			return data;
+
+		SoftReference<byte[]> ref = inflated;
+		byte[] ret = (null == ref) ? null : ref.get();
+		if (null == ret) {
+			ret = new byte[length];
+			Inflater inf = new Inflater();
+			try {
+				inf.setInput( data );
+				int n = 0;
+				while (n < length && !inf.finished()) {
+					int k = inf.inflate( ret, n, length - n );
+					if (k == 0 && inf.needsInput())
+						break;
+					n += k;
+				}
+			}
+			catch (DataFormatException e) {
+				// the buffer was deflated here
+				throw new IllegalStateException( e );
+			}
+			finally {
+				inf.end();
+			}
+			inflated = new SoftReference<byte[]>( ret );
+		}
+		return ret;
+	}
+
+}
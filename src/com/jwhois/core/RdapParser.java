@@ -0,0 +1,414 @@
+package com.jwhois.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the RDAP answer of a domain ( RFC 9083 ) into the whois map, reading the JSON as a stream: the fields are set
+ * where the registries' text would have put them, so a record of RDAP reads like one of port 43.
+ *
+ * The link to the registrar's RDAP server becomes regyinfo.whois, marked "rdap:", which is where the deep lookup goes.
+ */
+final class RdapParser {
+	private static final WhoisPath	NAME		= WhoisPath.of( "regrinfo.domain.name" );
+	private static final WhoisPath	STATUS		= WhoisPath.of( "regrinfo.domain.status" );
+	private static final WhoisPath	NSERVER		= WhoisPath.of( "regrinfo.domain.nserver" );
+	private static final WhoisPath	SPONSOR		= WhoisPath.of( "regrinfo.domain.sponsor" );
+	private static final WhoisPath	REFERRER	= WhoisPath.of( "regyinfo.referrer" );
+
+	// The roles of an entity and where its contact goes
+	private static final String[]	ROLES		= { "registrant", "administrative", "technical", "billing", "abuse",
+			"noc" };
+	private static final String[]	CONTACTS	= { "regrinfo.owner", "regrinfo.admin", "regrinfo.tech",
+			"regrinfo.bill", "regrinfo.abuse", "regrinfo.network" };
+
+	private final WhoisMap			map;
+	private final Canonicalizer		canon		= Utility.getCanonicalizer();
+
+	private RdapParser(WhoisMap map) {
+		this.map = map;
+	}
+
+	/**
+	 * Parses the lines of an RDAP answer into the map.
+	 *
+	 * @return true if the answer is a domain, false for an error answer ( 404 ) or text which is not RDAP
+	 */
+	static boolean parse(List<String> rawdata, WhoisMap map) {
+		JsonReader r = new JsonReader( rawdata );
+		try {
+			if (JsonReader.BEGIN_OBJECT != r.peek())
+				return false;
+			return new RdapParser( map ).domain( r );
+		}
+		catch (IOException e) {
+			Utility.logWarn( "RdapParser::parse IOException", e );
+			return false;
+		}
+	}
+
+	private boolean domain(JsonReader r) throws IOException {
+		boolean domain = false;
+		boolean error = false;
+
+		r.beginObject();
+		while (r.hasNext()) {
+			String name = r.nextName();
+			if ("objectClassName".equals( name )) {
+				domain = "domain".equals( r.nextStringOrSkip() );
+			}
+			else if ("errorCode".equals( name )) {
+				error = true;
+				r.skipValue();
+			}
+			else if ("ldhName".equals( name )) {
+				map.set( NAME, r.nextStringOrSkip(), true );
+			}
+			else if ("status".equals( name )) {
+				strings( r, STATUS );
+			}
+			else if ("nameservers".equals( name )) {
+				nameservers( r );
+			}
+			else if ("events".equals( name )) {
+				events( r );
+			}
+			else if ("entities".equals( name )) {
+				entities( r );
+			}
+			else if ("links".equals( name )) {
+				links( r );
+			}
+			else {
+				r.skipValue();
+			}
+		}
+		r.endObject();
+		return domain && !error;
+	}
+
+	private void strings(JsonReader r, WhoisPath path) throws IOException {
+		if (JsonReader.BEGIN_ARRAY != r.peek()) {
+			set( path, r.nextStringOrSkip() );
+			return;
+		}
+		r.beginArray();
+		while (r.hasNext()) {
+			set( path, r.nextStringOrSkip() );
+		}
+		r.endArray();
+	}
+
+	private void nameservers(JsonReader r) throws IOException {
+		if (JsonReader.BEGIN_ARRAY != r.peek()) {
+			r.skipValue();
+			return;
+		}
+		r.beginArray();
+		while (r.hasNext()) {
+			if (JsonReader.BEGIN_OBJECT != r.peek()) {
+				r.skipValue();
+				continue;
+			}
+			r.beginObject();
+			while (r.hasNext()) {
+				if ("ldhName".equals( r.nextName() ))
+					set( NSERVER, r.nextStringOrSkip() );
+				else
+					r.skipValue();
+			}
+			r.endObject();
+		}
+		r.endArray();
+	}
+
+	private void events(JsonReader r) throws IOException {
+		if (JsonReader.BEGIN_ARRAY != r.peek()) {
+			r.skipValue();
+			return;
+		}
+		r.beginArray();
+		while (r.hasNext()) {
+			if (JsonReader.BEGIN_OBJECT != r.peek()) {
+				r.skipValue();
+				continue;
+			}
+			String action = null, date = null;
+			r.beginObject();
+			while (r.hasNext()) {
+				String name = r.nextName();
+				if ("eventAction".equals( name ))
+					action = r.nextStringOrSkip();
+				else if ("eventDate".equals( name ))
+					date = r.nextStringOrSkip();
+				else
+					r.skipValue();
+			}
+			r.endObject();
+
+			if ("registration".equals( action ))
+				map.set( WhoisMap.CREATED, date );
+			else if ("expiration".equals( action ))
+				map.set( WhoisMap.EXPIRES, date );
+			else if ("last changed".equals( action ))
+				map.set( WhoisMap.CHANGED, date );
+		}
+		r.endArray();
+	}
+
+	private void links(JsonReader r) throws IOException {
+		if (JsonReader.BEGIN_ARRAY != r.peek()) {
+			r.skipValue();
+			return;
+		}
+		r.beginArray();
+		while (r.hasNext()) {
+			if (JsonReader.BEGIN_OBJECT != r.peek()) {
+				r.skipValue();
+				continue;
+			}
+			String rel = null, href = null, type = null;
+			r.beginObject();
+			while (r.hasNext()) {
+				String name = r.nextName();
+				if ("rel".equals( name ))
+					rel = r.nextStringOrSkip();
+				else if ("href".equals( name ))
+					href = r.nextStringOrSkip();
+				else if ("type".equals( name ))
+					type = r.nextStringOrSkip();
+				else
+					r.skipValue();
+			}
+			r.endObject();
+
+			// The registrar's answer of the same domain
+			if ("related".equals( rel ) && !Utility.isEmpty( href ) && null == map.get( WhoisMap.WHOIS )
+					&& ((null != type && type.contains( "rdap" )) || href.contains( "/domain/" )))
+				set( WhoisMap.WHOIS, WhoisClient.RDAP_PREFIX + href );
+		}
+		r.endArray();
+	}
+
+	private void entities(JsonReader r) throws IOException {
+		if (JsonReader.BEGIN_ARRAY != r.peek()) {
+			r.skipValue();
+			return;
+		}
+		r.beginArray();
+		while (r.hasNext()) {
+			if (JsonReader.BEGIN_OBJECT == r.peek())
+				entity( r );
+			else
+				r.skipValue();
+		}
+		r.endArray();
+	}
+
+	/**
+	 * Reads an entity, and the entities within it, into the contacts of its roles.
+	 */
+	private void entity(JsonReader r) throws IOException {
+		WhoisMap contact = new WhoisMap();
+		String handle = null;
+		List<String> roles = new ArrayList<String>();
+
+		r.beginObject();
+		while (r.hasNext()) {
+			String name = r.nextName();
+			if ("handle".equals( name )) {
+				handle = r.nextStringOrSkip();
+			}
+			else if ("roles".equals( name ) && JsonReader.BEGIN_ARRAY == r.peek()) {
+				r.beginArray();
+				while (r.hasNext()) {
+					String role = r.nextStringOrSkip();
+					if (null != role)
+						roles.add( role.toLowerCase() );
+				}
+				r.endArray();
+			}
+			else if ("vcardArray".equals( name )) {
+				vcardArray( r, contact );
+			}
+			else if ("entities".equals( name )) {
+				entities( r );
+			}
+			else {
+				r.skipValue();
+			}
+		}
+		r.endObject();
+
+		if (null != handle)
+			contact.set( "handle", handle, true );
+
+		if (roles.contains( "registrar" )) {
+			String registrar = first( contact.get( "name" ) );
+			if (null == registrar)
+				registrar = first( contact.get( "organization" ) );
+			set( WhoisMap.REGISTRAR, registrar );
+			set( SPONSOR, registrar );
+			set( REFERRER, first( contact.get( "url" ) ) );
+		}
+		contact.remove( "url" );
+		if (contact.getMap().isEmpty())
+			return;
+		// One copy per role, as the text parsers give
+		for (int i = 0; i < ROLES.length; i++) {
+			if (roles.contains( ROLES[i] )) {
+				WhoisMap copy = new WhoisMap();
+				for (String key : contact.getMap().keySet()) {
+					copy.set( key, contact.get( key ), true );
+				}
+				map.set( CONTACTS[i], copy );
+			}
+		}
+	}
+
+	/*
+	 *  ["vcard", [
+	 *  	["version", {}, "text", "4.0"],
+	 *  	["fn", {}, "text", "Example Registrar"],
+	 *  	["adr", {}, "text", ["", "", "street", "city", "region", "code", "country"]],
+	 *  	["tel", {"type":["voice"]}, "uri", "tel:+1.555"],
+	 *  	...
+	 *  ]]
+	 */
+	private void vcardArray(JsonReader r, WhoisMap contact) throws IOException {
+		if (JsonReader.BEGIN_ARRAY != r.peek()) {
+			r.skipValue();
+			return;
+		}
+		r.beginArray();
+		while (r.hasNext()) {
+			if (JsonReader.BEGIN_ARRAY != r.peek()) {
+				r.skipValue();
+				continue;
+			}
+			r.beginArray();
+			while (r.hasNext()) {
+				if (JsonReader.BEGIN_ARRAY == r.peek())
+					property( r, contact );
+				else
+					r.skipValue();
+			}
+			r.endArray();
+		}
+		r.endArray();
+	}
+
+	private void property(JsonReader r, WhoisMap contact) throws IOException {
+		r.beginArray();
+		String name = r.hasNext() ? r.nextStringOrSkip() : null;
+		boolean fax = false;
+		if (r.hasNext()) {
+			fax = isFax( r );
+		}
+		if (r.hasNext()) {
+			// the value type
+			r.skipValue();
+		}
+
+		List<String> values = new ArrayList<String>();
+		while (r.hasNext()) {
+			if (JsonReader.BEGIN_ARRAY == r.peek()) {
+				values( r, values );
+			}
+			else {
+				String v = r.nextStringOrSkip();
+				if (!Utility.isEmpty( v ))
+					values.add( v );
+			}
+		}
+		r.endArray();
+
+		if (null == name || values.isEmpty())
+			return;
+		name = name.toLowerCase();
+		if ("fn".equals( name )) {
+			contact.set( "name", values.get( 0 ), true );
+		}
+		else if ("org".equals( name )) {
+			contact.set( "organization", values.get( 0 ), true );
+		}
+		else if ("adr".equals( name )) {
+			for (String v : values) {
+				contact.set( "address", v, true );
+			}
+		}
+		else if ("email".equals( name )) {
+			contact.set( "email", values.get( 0 ), true );
+		}
+		else if ("tel".equals( name )) {
+			String tel = values.get( 0 );
+			if (tel.regionMatches( true, 0, "tel:", 0, 4 ))
+				tel = tel.substring( 4 );
+			contact.set( fax ? "fax" : "phone", tel, true );
+		}
+		else if ("url".equals( name )) {
+			contact.set( "url", values.get( 0 ) );
+		}
+	}
+
+	// The values of a structured property, the address
+	private void values(JsonReader r, List<String> values) throws IOException {
+		r.beginArray();
+		while (r.hasNext()) {
+			if (JsonReader.BEGIN_ARRAY == r.peek()) {
+				values( r, values );
+			}
+			else {
+				String v = r.nextStringOrSkip();
+				if (!Utility.isEmpty( v ))
+					values.add( v );
+			}
+		}
+		r.endArray();
+	}
+
+	// The parameters of a property: {"type": "fax"} or {"type": ["voice", "fax"]}
+	private boolean isFax(JsonReader r) throws IOException {
+		if (JsonReader.BEGIN_OBJECT != r.peek()) {
+			r.skipValue();
+			return false;
+		}
+		boolean fax = false;
+		r.beginObject();
+		while (r.hasNext()) {
+			if (!"type".equals( r.nextName() )) {
+				r.skipValue();
+			}
+			else if (JsonReader.BEGIN_ARRAY == r.peek()) {
+				r.beginArray();
+				while (r.hasNext()) {
+					fax |= "fax".equalsIgnoreCase( r.nextStringOrSkip() );
+				}
+				r.endArray();
+			}
+			else {
+				fax = "fax".equalsIgnoreCase( r.nextStringOrSkip() );
+			}
+		}
+		r.endObject();
+		return fax;
+	}
+
+	// The first value of a contact field
+	@SuppressWarnings("unchecked")
+	private static String first(Object val) {
+		if (val instanceof List)
+			return (( List<String> ) val).isEmpty() ? null : (( List<String> ) val).get( 0 );
+		return (null == val) ? null : val.toString();
+	}
+
+	private void set(WhoisPath path, String val) {
+		if (Utility.isEmpty( val ))
+			return;
+		if (null != canon)
+			val = canon.canonical( val );
+		map.set( path, val, true );
+	}
+
+}
@@ -0,0 +1,156 @@
+package com.jwhois.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a WHOIS query connects and retries: the connect and read timeouts, an exponential backoff with jitter between
+ * connect attempts, and one time budget for the whole lookup. Once the budget is spent the lookup gives up, so a dead
+ * server costs a known, bounded latency. The budget of a {@link WhoisEngine} lookup covers both hops, the name lookups
+ * and the waits for rate-limit permits; a query of a bare {@link WhoisClient} has one of its own.
+ *
+ * Install it with {@link Utility#setRetryPolicy(RetryPolicy)}. Instances are immutable.
+ */
+public class RetryPolicy {
+	private static final int	DEFAULT_ATTEMPTS		= 3;
+	private static final long	DEFAULT_CONNECT_TIMEOUT	= 1000;
+	private static final long	DEFAULT_READ_TIMEOUT	= 15 * 1000;
+	private static final long	DEFAULT_BACKOFF			= 200;
+	private static final long	DEFAULT_MAX_BACKOFF		= 2000;
+	private static final double	DEFAULT_JITTER			= 0.5;
+	private static final long	DEFAULT_BUDGET			= 20 * 1000;
+
+	private final int			maxAttempts;
+	private final long			connectTimeout;
+	private final long			readTimeout;
+	private final long			backoff;
+	private final long			maxBackoff;
+	private final double		jitter;
+	private final long			budget;
+
+	/**
+	 * Creates the default policy: 3 attempts, 1s connect timeout, 15s read timeout, 200ms backoff doubling up to 2s
+	 * with 50% jitter, 20s budget.
+	 */
+	public RetryPolicy() {
+		this( DEFAULT_ATTEMPTS, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_BACKOFF, DEFAULT_MAX_BACKOFF,
+				DEFAULT_JITTER, DEFAULT_BUDGET );
+	}
+
+	/**
+	 * @param maxAttempts
+	 *            connect attempts per query
+	 * @param connectTimeout
+	 *            milliseconds per connect attempt
+	 * @param readTimeout
+	 *            maximal idle milliseconds between two reads
+	 * @param backoff
+	 *            milliseconds to wait after the first failed attempt, doubled after every further one
+	 * @param maxBackoff
+	 *            upper bound of the wait between two attempts
+	 * @param jitter
+	 *            share of the wait which is randomized, from 0 to 1
+	 * @param budget
+	 *            milliseconds for one lookup, 0 for no budget
+	 */
+	public RetryPolicy(int maxAttempts, long connectTimeout, long readTimeout, long backoff, long maxBackoff,
+			double jitter, long budget) {
+		this.maxAttempts = Math.max( 1, maxAttempts );
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.backoff = Math.max( 0, backoff );
+		this.maxBackoff = Math.max( this.backoff, maxBackoff );
+		this.jitter = Math.min( 1, Math.max( 0, jitter ) );
+		this.budget = budget;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public long getReadTimeout() {
+		return readTimeout;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @param start
+	 *            the start time of the query
+	 * @return the time when the budget of a query started at the given time is spent
+	 */
+	public long deadline(long start) {
+		return (budget > 0) ? start + budget : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @param attempt
+	 *            the number of the failed attempt, starting at 1
+	 * @return the milliseconds to wait before the next attempt
+	 */
+	public long backoff(int attempt) {
+		long wait = backoff;
+		for (int i = 1; i < attempt && wait < maxBackoff; i++) {
+			wait *= 2;
+		}
+		wait = Math.min( wait, maxBackoff );
+		if (wait <= 0 || jitter <= 0)
+			return wait;
+		long fixed = ( long ) (wait * (1 - jitter));
+		return fixed + ( long ) (ThreadLocalRandom.current().nextDouble() * (wait - fixed));
+	}
+
+	/**
+	 * Waits for the backoff of a failed attempt, if there is budget left for another one.
+	 *
+	 * @param attempt
+	 *            the number of the failed attempt, starting at 1
+	 * @param deadline
+	 * @return true if the next attempt may start
+	 */
+	boolean awaitRetry(int attempt, long deadline) {
+		long wait = retryDelay( attempt, deadline );
+		if (wait < 0)
+			return false;
+		if (wait > 0) {
+			try {
+				Thread.sleep( wait );
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param attempt
+	 *            the number of the failed attempt, starting at 1
+	 * @param deadline
+	 * @return the milliseconds to wait before the next attempt, -1 if there is none
+	 */
+	long retryDelay(int attempt, long deadline) {
+		if (attempt >= maxAttempts)
+			return -1;
+		long wait = backoff( attempt );
+		return (System.currentTimeMillis() + wait >= deadline) ? -1 : wait;
+	}
+
+	/**
+	 * @param timeout
+	 * @param deadline
+	 * @return the timeout cut down to what is left of the budget, at least 1ms
+	 */
+	static int capped(long timeout, long deadline) {
+		long left = deadline - System.currentTimeMillis();
+		long t = (timeout > 0) ? Math.min( timeout, left ) : left;
+		return ( int ) Math.max( 1, Math.min( t, Integer.MAX_VALUE ) );
+	}
+
+}
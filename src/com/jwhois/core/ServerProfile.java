@@ -0,0 +1,301 @@
+package com.jwhois.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * One &lt;Translates&gt; entry of WhoisTranslates.xml, compiled once: the parser type, the line filter patterns, and
+ * the translation targets split into paths. Instances are shared by all lookups and immutable.
+ */
+final class ServerProfile {
+	static final ServerProfile					EMPTY	= new ServerProfile( "", new HashMap<String, Object>() );
+	// The servers marked "rdap:" which have no entry of their own: the JSON is mapped by RdapParser.
+	static final ServerProfile					RDAP	= new ServerProfile( "rdap", Collections
+																.<String, Object> singletonMap( "parser", "rdap" ) );
+
+	// The answers for a domain that is not registered, for the servers without a nomatch attribute
+	private static final Pattern				NO_MATCH	= Pattern.compile(
+														"^\\s*(no match|not found|no entries found|no data found|"
+																+ "no matching record|domain not found|nothing found)",
+														Pattern.CASE_INSENSITIVE );
+
+	private final String						id;
+	private final String						parser;
+	private final Pattern						lineStart;
+	private final Pattern						lineEnd;
+	private final Pattern						lineCatch;
+	private final Pattern						noMatch;
+	private final String[]						blockHeads;
+	private final String[]						contactHandles;
+	private final String						dateOrder;
+
+	// Keeps the order of the XML map, the first matching contact prefix wins.
+	private final Map<String, String>			contacts;
+	private final PrefixMatcher					contactPrefixes;
+	private final Map<String, WhoisPath[]>		contactPaths;
+	private final Map<String, String>			contactInfo;
+	private final Map<String, String[]>			contactInfoPaths;
+	private final Map<String, String[]>			translates;
+	private final Map<String, WhoisPath[]>		translatePaths;
+	private final Set<String>					canonicalKeys;
+	private final WhoisPath[]					targets;
+	private final WhoisPath[]					contactTargets;
+
+	@SuppressWarnings("unchecked")
+	ServerProfile(String id, Map<String, Object> entry) {
+		this.id = id;
+
+		String p = attr( entry, "parser" );
+		this.parser = Utility.isEmpty( p ) ? "a" : p;
+		this.lineStart = compile( id, attr( entry, "linestart" ) );
+		this.lineEnd = compile( id, attr( entry, "lineend" ) );
+		this.lineCatch = compile( id, attr( entry, "linecatch" ) );
+		Pattern nm = compile( id, attr( entry, "nomatch" ) );
+		this.noMatch = (null == nm) ? NO_MATCH : nm;
+
+		String blockHead = attr( entry, "blockhead" );
+		String contactHandle = attr( entry, "contacthandle" );
+		this.blockHeads = Utility.isEmpty( blockHead ) ? null : blockHead.split( "," );
+		this.contactHandles = Utility.isEmpty( contactHandle ) ? null : contactHandle.split( "," );
+
+		String order = attr( entry, "dateorder" );
+		if (!Utility.isEmpty( order ) && !"dmy".equals( order ) && !"mdy".equals( order )) {
+			Utility.logInfo( "ServerProfile::ServerProfile unknown dateorder: <id:" + id + "><dateorder:" + order + ">" );
+			order = "";
+		}
+		this.dateOrder = Utility.isEmpty( order ) ? null : order;
+
+		this.contacts = copy( ( Map<String, String> ) entry.get( "contacts" ) );
+		this.contactPrefixes = (null == contacts) ? null : new PrefixMatcher( contacts );
+		this.contactPaths = (null == contacts) ? null : paths( split( invert( contacts ) ) );
+		this.contactInfo = copy( ( Map<String, String> ) entry.get( "contactinfo" ) );
+		this.contactInfoPaths = (null == contactInfo) ? null : split( contactInfo );
+		Map<String, String> list = copy( ( Map<String, String> ) entry.get( "list" ) );
+		this.translates = (null == list) ? null : split( list );
+		this.translatePaths = (null == translates) ? null : paths( translates );
+		this.canonicalKeys = canonicalKeys( translates, translatePaths );
+
+		List<WhoisPath> t = new ArrayList<WhoisPath>();
+		List<WhoisPath> c = new ArrayList<WhoisPath>();
+		if (null != contactPaths) {
+			for (WhoisPath[] paths : contactPaths.values()) {
+				t.addAll( Arrays.asList( paths ) );
+			}
+		}
+		if (null != translatePaths) {
+			for (WhoisPath[] paths : translatePaths.values()) {
+				t.addAll( Arrays.asList( paths ) );
+			}
+		}
+		if (null != contactInfoPaths) {
+			for (String[] paths : contactInfoPaths.values()) {
+				for (String s : paths) {
+					String mk = s.startsWith( "k|" ) ? s.substring( 2 ) : s;
+					if (mk.indexOf( '.' ) >= 1)
+						c.add( WhoisPath.of( mk ) );
+				}
+			}
+		}
+		t.addAll( c );
+		this.targets = t.toArray( new WhoisPath[t.size()] );
+		this.contactTargets = c.toArray( new WhoisPath[c.size()] );
+	}
+
+	String getId() {
+		return id;
+	}
+
+	/**
+	 * @return "a", "b" or "c"
+	 */
+	String getParser() {
+		return parser;
+	}
+
+	Pattern getLineStart() {
+		return lineStart;
+	}
+
+	Pattern getLineEnd() {
+		return lineEnd;
+	}
+
+	Pattern getLineCatch() {
+		return lineCatch;
+	}
+
+	/**
+	 * @return the pattern of a line saying the domain is not registered
+	 */
+	Pattern getNoMatch() {
+		return noMatch;
+	}
+
+	String[] getBlockHeads() {
+		return blockHeads;
+	}
+
+	String[] getContactHandles() {
+		return contactHandles;
+	}
+
+	/**
+	 * @return "dmy" or "mdy", the order of day and month in dates like 01/02/2010; null if not given
+	 */
+	String getDateOrder() {
+		return dateOrder;
+	}
+
+	/**
+	 * @return line key (or prefix) to contact path, null if none
+	 */
+	Map<String, String> getContacts() {
+		return contacts;
+	}
+
+	/**
+	 * @return the contact prefixes of parser A in a trie, null if none
+	 */
+	PrefixMatcher getContactPrefixes() {
+		return contactPrefixes;
+	}
+
+	/**
+	 * @param key
+	 *            a key of the raw data map
+	 * @return the paths of the contact, null if the key is not a contact
+	 */
+	WhoisPath[] getContactPaths(String key) {
+		return (null == contactPaths) ? null : contactPaths.get( key );
+	}
+
+	/**
+	 * @return contact line key to contact field, null if none
+	 */
+	Map<String, String> getContactInfo() {
+		return contactInfo;
+	}
+
+	String[] getContactInfoPaths(String key) {
+		return (null == contactInfoPaths) ? null : contactInfoPaths.get( key );
+	}
+
+	/**
+	 * @param key
+	 *            a key of the raw data map
+	 * @return the translation targets, null if the key is not translated
+	 */
+	String[] getTranslates(String key) {
+		return (null == translates) ? null : translates.get( key );
+	}
+
+	/**
+	 * @param key
+	 *            a key of the raw data map
+	 * @return the paths of {@link #getTranslates(String)}, without the "k|" mark; null if the key is not translated
+	 */
+	WhoisPath[] getTranslatePaths(String key) {
+		return (null == translatePaths) ? null : translatePaths.get( key );
+	}
+
+	/**
+	 * @return true if the values of the key go to a field with few distinct values, see {@link WhoisMap#CANONICAL}
+	 */
+	boolean isCanonical(String key) {
+		return canonicalKeys.contains( key );
+	}
+
+	/**
+	 * @return every path the translation of an answer may set in the whois map
+	 */
+	WhoisPath[] getTargets() {
+		return targets;
+	}
+
+	/**
+	 * @return the paths the contact info lines set in the whois map, outside of their contact
+	 */
+	WhoisPath[] getContactTargets() {
+		return contactTargets;
+	}
+
+	/**
+	 * @return the keys translated as is to a field of {@link WhoisMap#CANONICAL}
+	 */
+	private static Set<String> canonicalKeys(Map<String, String[]> translates, Map<String, WhoisPath[]> paths) {
+		Set<String> ret = new HashSet<String>();
+		if (null != translates) {
+			for (Map.Entry<String, String[]> e : translates.entrySet()) {
+				String[] trans = e.getValue();
+				WhoisPath[] p = paths.get( e.getKey() );
+				for (int i = 0; i < trans.length; i++) {
+					if (!trans[i].startsWith( "k|" ) && WhoisMap.CANONICAL.contains( p[i] ))
+						ret.add( e.getKey() );
+				}
+			}
+		}
+		return Collections.unmodifiableSet( ret );
+	}
+
+	private static Map<String, WhoisPath[]> paths(Map<String, String[]> map) {
+		Map<String, WhoisPath[]> ret = new HashMap<String, WhoisPath[]>();
+		for (Map.Entry<String, String[]> e : map.entrySet()) {
+			String[] s = e.getValue();
+			WhoisPath[] paths = new WhoisPath[s.length];
+			for (int i = 0; i < s.length; i++) {
+				paths[i] = WhoisPath.of( s[i].startsWith( "k|" ) ? s[i].substring( 2 ) : s[i] );
+			}
+			ret.put( e.getKey(), paths );
+		}
+		return Collections.unmodifiableMap( ret );
+	}
+
+	private static String attr(Map<String, Object> entry, String name) {
+		Object o = entry.get( name );
+		return (null == o) ? "" : o.toString();
+	}
+
+	private static Pattern compile(String id, String str) {
+		if (Utility.isEmpty( str ))
+			return null;
+		try {
+			return Pattern.compile( str, Pattern.CASE_INSENSITIVE );
+		}
+		catch (PatternSyntaxException e) {
+			Utility.logWarn( "ServerProfile::compile PatternSyntaxException: <id:" + id + "><pattern:" + str + ">", e );
+			return null;
+		}
+	}
+
+	private static Map<String, String> copy(Map<String, String> map) {
+		if (Utility.isEmpty( map ))
+			return null;
+		return Collections.unmodifiableMap( new LinkedHashMap<String, String>( map ) );
+	}
+
+	private static Map<String, String> invert(Map<String, String> map) {
+		Map<String, String> ret = new HashMap<String, String>();
+		for (String v : map.values()) {
+			ret.put( v, v );
+		}
+		return ret;
+	}
+
+	private static Map<String, String[]> split(Map<String, String> map) {
+		Map<String, String[]> ret = new HashMap<String, String[]>();
+		for (Map.Entry<String, String> e : map.entrySet()) {
+			ret.put( e.getKey(), e.getValue().split( "," ) );
+		}
+		return Collections.unmodifiableMap( ret );
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.jwhois.core;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tokens of one answer, shared by the parse stages: each line is tokenized once, on first use. The contact stage
+ * gets the tokens of the lines it was handed through {@link #lookup(String)}. Lines may be added while the answer is
+ * read.
+ */
+final class TokenStream {
+	private String[]					lines;
+	private LineToken[]					tokens;
+	private int							size;
+	private Map<String, LineToken>		handed;
+
+	TokenStream() {
+		this.lines = new String[64];
+		this.tokens = new LineToken[64];
+	}
+
+	TokenStream(List<String> rawdata) {
+		this.lines = rawdata.toArray( new String[rawdata.size()] );
+		this.tokens = new LineToken[lines.length];
+		this.size = lines.length;
+	}
+
+	void add(String line) {
+		if (size == lines.length) {
+			lines = Arrays.copyOf( lines, size * 2 + 1 );
+			tokens = Arrays.copyOf( tokens, size * 2 + 1 );
+		}
+		lines[size++] = line;
+	}
+
+	int size() {
+		return size;
+	}
+
+	String line(int i) {
+		return lines[i];
+	}
+
+	LineToken get(int i) {
+		LineToken t = tokens[i];
+		if (null == t) {
+			t = LineToken.tokenize( lines[i] );
+			tokens[i] = t;
+		}
+		return t;
+	}
+
+	/**
+	 * Hands line i to a later stage as is.
+	 *
+	 * @return the line
+	 */
+	String hand(int i) {
+		put( lines[i], get( i ) );
+		return lines[i];
+	}
+
+	/**
+	 * Hands line i to a later stage trimmed, with the tokens of the trimmed line.
+	 *
+	 * @return the trimmed line
+	 */
+	String handTrimmed(int i) {
+		String line = lines[i];
+		int s = 0, e = line.length();
+		while (s < e && line.charAt( s ) <= ' ') {
+			s++;
+		}
+		while (e > s && line.charAt( e - 1 ) <= ' ') {
+			e--;
+		}
+		if (s == 0 && e == line.length())
+			return hand( i );
+
+		String trimmed = line.substring( s, e );
+		put( trimmed, LineToken.tokenize( line, s, e ) );
+		return trimmed;
+	}
+
+	/**
+	 * @param line
+	 *            a line handed by {@link #hand(int)} or {@link #handTrimmed(int)}, or any other line
+	 * @return its tokens
+	 */
+	LineToken lookup(String line) {
+		LineToken t = (null == handed) ? null : handed.get( line );
+		return (null == t) ? LineToken.tokenize( line ) : t;
+	}
+
+	private void put(String line, LineToken t) {
+		if (null == handed)
+			handed = new IdentityHashMap<String, LineToken>();
+		handed.put( line, t );
+	}
+
+}
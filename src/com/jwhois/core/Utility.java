@@ -29,10 +29,19 @@ public class Utility {
 
 	private static Logger		logger;
 	private static IProxy		proxyFactory;
+	private static NioTransport	nioTransport;
+	private static RateLimiter	rateLimiter			= new RateLimiter();
+	private static RetryPolicy	retryPolicy			= new RetryPolicy();
+	private static HttpTransport	httpTransport		= new HttpTransport();
+	private static DnsResolver	resolver			= new DnsResolver();
+	private static RawArchive	rawArchive;
+	private static boolean		lazyParse;
+	private static Canonicalizer	canonicalizer;
 
 	// Default Global Settings
 	private static final String	WHOIS_SERVERS_DB	= "WhoisServers.xml";
 	private static final String	WHOIS_TRANSLATES_DB	= "WhoisTranslates.xml";
+	private static final String	WHOIS_LIMITS_DB		= "WhoisLimits.xml";
 
 	static final boolean		DEBUG				= false;
 
@@ -44,6 +53,10 @@ public class Utility {
 		return com.jwhois.core.Utility.class.getResourceAsStream( WHOIS_TRANSLATES_DB );
 	}
 
+	static InputStream getLimitsDB() {
+		return com.jwhois.core.Utility.class.getResourceAsStream( WHOIS_LIMITS_DB );
+	}
+
 	/**
 	 * check if a string is empty
 	 * 
@@ -130,7 +143,7 @@ public class Utility {
 	public static String getAddressbyName(String domain) {
 		String host = "";
 		try {
-			InetAddress addr = InetAddress.getByName( domain );
+			InetAddress addr = resolver.resolve( domain )[0];
 			host = addr.getHostAddress();
 		}
 		catch (UnknownHostException e) {
@@ -218,6 +231,135 @@ public class Utility {
 		return proxyFactory.getProxy();
 	}
 
+	/**
+	 * @param server
+	 *            the host name of the WHOIS server
+	 * @return the proxy to reach the server through, null for none
+	 */
+	public static String getProxy(String server) {
+		IProxy p = proxyFactory;
+		if (p instanceof IProxyPool)
+			return (( IProxyPool ) p).getProxy( server );
+		return (null == p) ? null : p.getProxy();
+	}
+
+	/**
+	 * Reports an attempt through a proxy to the proxy factory, if it is a pool.
+	 */
+	static void reportProxy(String proxy, String server, boolean success, long connectMillis, long firstByteMillis) {
+		IProxy p = proxyFactory;
+		if (p instanceof IProxyPool)
+			(( IProxyPool ) p).report( proxy, server, success, connectMillis, firstByteMillis );
+	}
+
+	/**
+	 * set the non-blocking transport for port-43 queries. Set null to use blocking sockets again.
+	 * 
+	 * @param t
+	 */
+	public static void setNioTransport(NioTransport t) {
+		nioTransport = t;
+	}
+
+	public static NioTransport getNioTransport() {
+		return nioTransport;
+	}
+
+	/**
+	 * set the per host query budget. The default one reads WhoisLimits.xml: only the hosts listed there are limited,
+	 * unless it has a "default" entry. A query waits for its permit at most until its time budget is spent. Set null
+	 * to disable rate limiting.
+	 * 
+	 * @param l
+	 */
+	public static void setRateLimiter(RateLimiter l) {
+		rateLimiter = l;
+	}
+
+	public static RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * set the connect/read timeouts, retries and time budget of the queries
+	 * 
+	 * @param p
+	 */
+	public static void setRetryPolicy(RetryPolicy p) {
+		retryPolicy = (null == p) ? new RetryPolicy() : p;
+	}
+
+	public static RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * set the shared transport of the web based WHOIS servers
+	 * 
+	 * @param t
+	 */
+	public static void setHttpTransport(HttpTransport t) {
+		httpTransport = (null == t) ? new HttpTransport() : t;
+	}
+
+	public static HttpTransport getHttpTransport() {
+		return httpTransport;
+	}
+
+	/**
+	 * set the caching host name resolver of the queries
+	 * 
+	 * @param r
+	 */
+	public static void setResolver(DnsResolver r) {
+		resolver = (null == r) ? new DnsResolver() : r;
+	}
+
+	public static DnsResolver getResolver() {
+		return resolver;
+	}
+
+	/**
+	 * set the archive of the raw answers of the lookups, null for none (the default)
+	 * 
+	 * @param a
+	 */
+	public static void setRawArchive(RawArchive a) {
+		rawArchive = a;
+	}
+
+	public static RawArchive getRawArchive() {
+		return rawArchive;
+	}
+
+	/**
+	 * set whether the parse of an answer leaves the translation of its sections until the map is read, false (the
+	 * default) to translate at once
+	 * 
+	 * @param lazy
+	 */
+	public static void setLazyParse(boolean lazy) {
+		lazyParse = lazy;
+	}
+
+	public static boolean isLazyParse() {
+		return lazyParse;
+	}
+
+	/**
+	 * set the table sharing the values of the registrar, name server and status fields across records, null for none
+	 * (the default)
+	 * 
+	 * @param c
+	 */
+	public static void setCanonicalizer(Canonicalizer c) {
+		canonicalizer = c;
+	}
+
+	public static Canonicalizer getCanonicalizer() {
+		return canonicalizer;
+	}
+
 	public static void logErr(String title, Exception e) {
 		if (null != logger)
 			logger.doLog( LEVEL.ERROR, title + " | ", e );
@@ -0,0 +1,164 @@
+package com.jwhois.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The values of a multi-value field of a {@link WhoisMap}. Keeps the lower cased form of each value next to it and an
+ * index of them, so adding with {@link #addAbsorbing(String)} compares without lower casing the list again, and a
+ * value already in the list is found at once.
+ *
+ * All changes go through get/set/add/remove of the list, so the forms stay in step with the values whichever way the
+ * list is changed.
+ */
+final class ValueList extends AbstractList<String> implements RandomAccess {
+	private String[]					values;
+	private String[]					lowers;
+	private int							size;
+	private final Map<String, int[]>	index;
+
+	ValueList() {
+		this.values = new String[4];
+		this.lowers = new String[4];
+		this.index = new HashMap<String, int[]>();
+	}
+
+	@Override
+	public String get(int i) {
+		check( i );
+		return values[i];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String set(int i, String value) {
+		check( i );
+		String old = values[i];
+		unindex( lowers[i] );
+		values[i] = value;
+		lowers[i] = lower( value );
+		index( lowers[i] );
+		return old;
+	}
+
+	@Override
+	public void add(int i, String value) {
+		if (i < 0 || i > size)
+			throw new IndexOutOfBoundsException( "Index: " + i + ", Size: " + size );
+		if (size == values.length) {
+			values = Arrays.copyOf( values, size * 2 );
+			lowers = Arrays.copyOf( lowers, size * 2 );
+		}
+		System.arraycopy( values, i, values, i + 1, size - i );
+		System.arraycopy( lowers, i, lowers, i + 1, size - i );
+		values[i] = value;
+		lowers[i] = lower( value );
+		index( lowers[i] );
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public String remove(int i) {
+		check( i );
+		String old = values[i];
+		unindex( lowers[i] );
+		System.arraycopy( values, i + 1, values, i, size - i - 1 );
+		System.arraycopy( lowers, i + 1, lowers, i, size - i - 1 );
+		size--;
+		values[size] = null;
+		lowers[size] = null;
+		modCount++;
+		return old;
+	}
+
+	/**
+	 * Adds a value unless one of the values contains it, ignoring case; the values it contains are dropped.
+	 *
+	 * @param value
+	 * @return false if the value was absorbed
+	 */
+	boolean addAbsorbing(String value) {
+		String v = value.toLowerCase();
+		if (index.containsKey( v ))
+			return false;
+
+		// One pass: a value containing v ends it, the values v contains are dropped only if none does.
+		int len = v.length();
+		int first = -1;
+		for (int i = 0; i < size; i++) {
+			String l = lowers[i];
+			if (l.length() >= len) {
+				if (l.indexOf( v ) > -1)
+					return false;
+			}
+			else if (first < 0 && v.indexOf( l ) > -1) {
+				first = i;
+			}
+		}
+
+		if (first >= 0) {
+			int j = first;
+			for (int i = first; i < size; i++) {
+				String l = lowers[i];
+				if (l.length() < len && v.indexOf( l ) > -1) {
+					unindex( l );
+					continue;
+				}
+				values[j] = values[i];
+				lowers[j] = l;
+				j++;
+			}
+			Arrays.fill( values, j, size, null );
+			Arrays.fill( lowers, j, size, null );
+			size = j;
+			modCount++;
+		}
+
+		add( size, value, v );
+		return true;
+	}
+
+	private void add(int i, String value, String lower) {
+		if (size == values.length) {
+			values = Arrays.copyOf( values, size * 2 );
+			lowers = Arrays.copyOf( lowers, size * 2 );
+		}
+		values[i] = value;
+		lowers[i] = lower;
+		index( lower );
+		size++;
+		modCount++;
+	}
+
+	private static String lower(String value) {
+		return (null == value) ? "" : value.toLowerCase();
+	}
+
+	private void index(String lower) {
+		int[] n = index.get( lower );
+		if (null == n)
+			index.put( lower, new int[] { 1 } );
+		else
+			n[0]++;
+	}
+
+	private void unindex(String lower) {
+		int[] n = index.get( lower );
+		if (null != n && --n[0] == 0)
+			index.remove( lower );
+	}
+
+	private void check(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException( "Index: " + i + ", Size: " + size );
+	}
+
+}
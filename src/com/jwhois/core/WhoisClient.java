@@ -4,34 +4,41 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.net.InetAddress;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.Socket;
-import java.net.SocketAddress;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.UnknownHostException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-
 public class WhoisClient {
 	private static final String	DEFAULT_HOST	= "whois.internic.net";
 	private static final String	DEFAULT_IP_HOST	= "whois.arin.net";
 	private static final int	DEFAULT_PORT	= 43;
-	private static final int	DEFAULT_TIMEOUT	= 15 * 1000;
+
+	/** The mark of an RDAP server: "rdap:" and its base URL, or the URL of a domain with {domain} in it. */
+	static final String			RDAP_PREFIX		= "rdap:";
+	private static final String	RDAP_ACCEPT		= "application/rdap+json, application/json";
 
 	protected String			url;
 	protected String			ptlType;
@@ -46,6 +53,18 @@ public class WhoisClient {
 	private LineFilter			filter;
 	private String				proxy;
 
+	// The connection of the running query, closed by abort().
+	private volatile Object		inflight;
+	private volatile boolean	aborted;
+	// Wakes a query waiting for its permit on abort(); a lock, not a monitor, so a virtual thread waiting unmounts.
+	private final ReentrantLock	abortLock		= new ReentrantLock();
+	private final Condition		abortSignal		= abortLock.newCondition();
+	private long				connectMillis;
+	private long				firstByteAt;
+
+	// The end of the time budget of the running lookup, 0 if each query has its own.
+	private volatile long		lookupDeadline;
+
 	// Constructor
 	public WhoisClient() {
 		init();
@@ -70,6 +89,39 @@ public class WhoisClient {
 	 * @return Line list of WHOIS Raw Data
 	 */
 	public List<String> domLookup(String domain, String tld) {
+		domQuery( domain, tld );
+		return doQuery();
+	}
+
+	/**
+	 * look up WHOIS from domain without a thread waiting for the answer: a port 43 query over the installed
+	 * {@link NioTransport} waits for its name lookup, permit, retries and answer on timers and selector threads only.
+	 * The other queries run as {@link #domLookup(String, String)} on the executor.
+	 * 
+	 * @param domain
+	 * @param tld
+	 * @param executor
+	 *            runs the blocking queries, and the end of the others
+	 * @return the future line list of WHOIS Raw Data
+	 */
+	CompletableFuture<List<String>> domLookupAsync(String domain, String tld, Executor executor) {
+		domQuery( domain, tld );
+
+		NioTransport nio = Utility.getNioTransport();
+		long deadline = getDeadline();
+		if (null == nio || Utility.hasProxyFactory() || !"whois".equals( ptlType ) || Utility.isEmpty( hostname )
+				|| Utility.isEmpty( queryStr ) || aborted || System.currentTimeMillis() >= deadline) {
+			return CompletableFuture.supplyAsync( new Supplier<List<String>>() {
+				@Override
+				public List<String> get() {
+					return doQuery();
+				}
+			}, executor );
+		}
+		return new AsyncQuery( nio, deadline ).start( executor );
+	}
+
+	private void domQuery(String domain, String tld) {
 		if (Utility.isEmpty( queryStr )) {
 			queryStr = "{domain}";
 		}
@@ -82,7 +134,6 @@ public class WhoisClient {
 		if (Utility.isEmpty( hostname )) {
 			hostname = DEFAULT_HOST;
 		}
-		return doQuery();
 	}
 
 	/**
@@ -107,66 +158,69 @@ public class WhoisClient {
 
 	private List<String> doQuery() {
 		List<String> list = new ArrayList<String>();
-		if (("http".equals( ptlType ) || "https".equals( ptlType )) && !Utility.isEmpty( url )) {
-			httpQuery( list );
+
+		// The budget covers the name lookup and the wait for the permit too.
+		RetryPolicy policy = Utility.getRetryPolicy();
+		long deadline = getDeadline();
+
+		if (aborted) {
+			// do nothing
+		}
+		else if (System.currentTimeMillis() >= deadline) {
+			Utility.logInfo( "WhoisClient::doQuery lookup budget spent: <host:" + this.hostname + "><query:"
+					+ this.queryStr + ">" );
+		}
+		else if (("http".equals( ptlType ) || "https".equals( ptlType )) && !Utility.isEmpty( url )) {
+			httpQuery( list, policy, deadline, false );
 		}
 		else if ("whois".equals( ptlType ) && !Utility.isEmpty( hostname ) && !Utility.isEmpty( queryStr )) {
-			socketQuery( list );
+			socketQuery( list, policy, deadline );
+		}
+		else if ("rdap".equals( ptlType ) && !Utility.isEmpty( url )) {
+			httpQuery( list, policy, deadline, true );
 		}
 		// Reset the args
 		init();
 		return list;
 	}
 
-	private void httpQuery(List<String> list) {
-		URLConnection conn = null;
+	/**
+	 * Queries a web whois page, or an RDAP server, over the shared HTTP transport. The lines of an RDAP answer are the
+	 * raw data as they come; the answer of a domain not found (404) is kept too, it tells the parser there is no record.
+	 * The certificate of an RDAP server is verified: its answer links to the next server.
+	 */
+	private void httpQuery(List<String> list, RetryPolicy policy, long deadline, boolean rdap) {
+		HttpURLConnection conn = null;
 		URL url = null;
+		HttpTransport http = Utility.getHttpTransport();
+		boolean hasSlot = false;
 
-		if (port == 443) {
-			trustAllHosts();
-		}
+		if (!acquirePermit( deadline ))
+			return;
 
 		try {
 			url = new URL( this.url );
-			conn = url.openConnection();
-
-			List<String> cleanList = Utility.cleanHtml( conn.getInputStream() );
-
-			boolean hasLineStart = (null == pnStart) ? false : true;
-			boolean hasLineEnd = (null == pnEnd) ? false : true;
-			boolean canRead = hasLineStart ? false : true;
-			boolean hasLineCatch = (null == pnCatch) ? false : true;
-			if (hasLineCatch) {
-				for (String line : cleanList) {
-					// Matches
-					Matcher m = pnCatch.matcher( line );
-					if (m.find() && (m.groupCount() > 0)) {
-						String[] slist = m.group( 1 ).split( "<[b|B][r|R]\\s*/?>" );
-						for (String l : slist) {
-							if (skipLineHTML( l ))
-								continue;
-							if (!canRead && hasLineStart && pnStart.matcher( l ).find())
-								canRead = true;
-							if (canRead && hasLineEnd && pnEnd.matcher( l ).find())
-								break;
-							if (canRead)
-								list.add( readingLineHTML( l ) );
-						}
+			hasSlot = http.acquire( url.getHost(), RetryPolicy.capped( policy.getBudget(), deadline ) );
+			if (!hasSlot) {
+				Utility.logInfo( "WhoisClient::httpQuery no free connection: <url:" + this.url + ">" );
+				return;
+			}
+			conn = http.open( url, RetryPolicy.capped( policy.getConnectTimeout(), deadline ),
+					RetryPolicy.capped( policy.getReadTimeout(), deadline ), rdap );
+			if (rdap)
+				conn.setRequestProperty( "Accept", RDAP_ACCEPT );
+			if (!track( conn ))
+				return;
+
+			if (rdap) {
+				for (String line : http.readJson( conn )) {
+					list.add( line );
+					if (!lineRead( line ))
 						break;
-					}
 				}
 			}
 			else {
-				for (String line : cleanList) {
-					if (skipLineHTML( line ))
-						continue;
-					if (!canRead && hasLineStart && pnStart.matcher( line ).find())
-						canRead = true;
-					if (canRead && hasLineEnd && pnEnd.matcher( line ).find())
-						break;
-					if (canRead)
-						list.add( readingLineHTML( line ) );
-				}
+				readPage( http.read( conn ), list );
 			}
 		}
 		catch (MalformedURLException e) {
@@ -175,39 +229,96 @@ public class WhoisClient {
 		catch (IOException e) {
 			Utility.logWarn( "WhoisClient::httpQuery IOException: <url:" + this.url + ">", e );
 		}
+		finally {
+			if (hasSlot)
+				http.release( url.getHost() );
+			inflight = null;
+		}
+	}
+
+	// Keeps the lines of the page between the start and end patterns, or those of the catch pattern
+	private void readPage(List<String> cleanList, List<String> list) {
+		boolean hasLineStart = (null == pnStart) ? false : true;
+		boolean hasLineEnd = (null == pnEnd) ? false : true;
+		boolean canRead = hasLineStart ? false : true;
+		boolean hasLineCatch = (null == pnCatch) ? false : true;
+		if (hasLineCatch) {
+			for (String line : cleanList) {
+				// Matches
+				Matcher m = pnCatch.matcher( line );
+				if (m.find() && (m.groupCount() > 0)) {
+					String[] slist = m.group( 1 ).split( "<[b|B][r|R]\\s*/?>" );
+					for (String l : slist) {
+						if (skipLineHTML( l ))
+							continue;
+						if (!canRead && hasLineStart && pnStart.matcher( l ).find())
+							canRead = true;
+						if (canRead && hasLineEnd && pnEnd.matcher( l ).find())
+							break;
+						if (canRead) {
+							String kept = readingLineHTML( l );
+							list.add( kept );
+							if (!lineRead( kept ))
+								break;
+						}
+						else if (!lineOutside( l ))
+							break;
+					}
+					break;
+				}
+			}
+		}
+		else {
+			for (String line : cleanList) {
+				if (skipLineHTML( line ))
+					continue;
+				if (!canRead && hasLineStart && pnStart.matcher( line ).find())
+					canRead = true;
+				if (canRead && hasLineEnd && pnEnd.matcher( line ).find())
+					break;
+				if (canRead) {
+					String kept = readingLineHTML( line );
+					list.add( kept );
+					if (!lineRead( kept ))
+						break;
+				}
+				else if (!lineOutside( line ))
+					break;
+			}
+		}
 	}
 
-	private void socketQuery(List<String> list) {
+	private void socketQuery(List<String> list, RetryPolicy policy, long deadline) {
 		PrintWriter pw = null;
-		BufferedReader br = null;
 		Socket sock = null;
+		boolean answered = false;
+		long sent = 0;
 
 		try {
-			InetAddress addr = InetAddress.getByName( hostname );
-			InetSocketAddress sAddr = new InetSocketAddress( addr, port );
-			sock = this.getConnectSocket( sAddr );
+			InetSocketAddress[] addrs = Utility.getResolver().resolve( hostname, port, deadline );
+
+			if (!acquirePermit( deadline ))
+				return;
+
+			// SOCKS proxies are only supported by the blocking path.
+			NioTransport nio = Utility.getNioTransport();
+			if (null != nio && !Utility.hasProxyFactory()) {
+				nioQuery( nio, addrs, list, policy, deadline );
+				return;
+			}
+
+			sock = this.getConnectSocket( addrs, policy, deadline );
 			if (null == sock)
 				return;
-			sock.setSoTimeout( DEFAULT_TIMEOUT );
+			sock.setSoTimeout( RetryPolicy.capped( policy.getReadTimeout(), deadline ) );
 			pw = new PrintWriter( sock.getOutputStream() );
 			pw.print( queryStr + "\r\n" );
 			pw.flush();
+			sent = System.currentTimeMillis();
+			firstByteAt = 0;
 
-			br = new BufferedReader( new InputStreamReader( sock.getInputStream(), "UTF-8" ) );
-			String line = null;
-			boolean hasLineStart = (null == pnStart) ? false : true;
-			boolean hasLineEnd = (null == pnEnd) ? false : true;
-			boolean canRead = hasLineStart ? false : true;
-			while ((line = br.readLine()) != null) {
-				if (skipLine( line ))
-					continue;
-				if (!canRead && hasLineStart && pnStart.matcher( line ).find())
-					canRead = true;
-				if (canRead && hasLineEnd && pnEnd.matcher( line ).find())
-					break;
-				if (canRead)
-					list.add( readingLine( line ) );
-			}
+			readLines( new LineReader( sock.getInputStream() ), list, sock, policy, deadline );
+			answered = (0 != firstByteAt);
 		}
 		catch (UnknownHostException e) {
 			Utility.logWarn( "WhoisClient::socketQuery UnknownHostException: <host:" + this.hostname + "><query:"
@@ -222,19 +333,368 @@ public class WhoisClient {
 					+ this.queryStr + ">", e );
 		}
 		finally {
+			// Tell the proxy pool how the query went; an exit which connects but never answers is a failure.
+			if (null != sock && null != proxy && !aborted)
+				Utility.reportProxy( proxy, hostname, answered, connectMillis, (0 == firstByteAt || 0 == sent)
+						? -1
+						: firstByteAt - sent );
 			try {
 				if (null != pw)
 					pw.close();
-				if (null != br)
-					br.close();
 				if (null != sock)
 					sock.close();
 			}
 			catch (IOException e) {
 				// do nothing
 			}
+			inflight = null;
+		}
+
+	}
+
+	private void nioQuery(NioTransport nio, InetSocketAddress[] addrs, List<String> list, RetryPolicy policy,
+			long deadline) throws IOException {
+		// Same encoding as the PrintWriter of the blocking path.
+		byte[] query = (queryStr + "\r\n").getBytes( Charset.defaultCharset() );
+
+		NioTransport.Exchange ex = null;
+		LineReceiver rx = null;
+		try {
+			for (int attempt = 1;; attempt++) {
+				rx = new LineReceiver( list );
+				ex = nio.query( addrs, query, RetryPolicy.capped( policy.getConnectTimeout(), deadline ),
+						policy.getReadTimeout(), deadline, rx );
+				if (!track( ex ))
+					return;
+				ex.await();
+				if (ex.isConnected() || !policy.awaitRetry( attempt, deadline ) || aborted)
+					break;
+			}
+		}
+		catch (InterruptedException e) {
+			ex.cancel();
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		if (!ex.isConnected())
+			return;
+
+		// Lines received before a read timeout are kept, as with the blocking socket.
+		rx.end();
+		if (null != ex.getError())
+			throw ex.getError();
+	}
+
+	/**
+	 * A port 43 query over the NIO transport which holds no thread while it waits. Each step runs on the thread which
+	 * ends the wait before it, a timer or a selector thread, and does no more than start the next wait; the lines are
+	 * read by a {@link LineReceiver}, and the query ends on the executor.
+	 */
+	private class AsyncQuery {
+		private final NioTransport							nio;
+		private final RetryPolicy							policy;
+		private final long									deadline;
+		private final List<String>							list;
+		// Completed with the last exchange, null if none was started
+		private final CompletableFuture<NioTransport.Exchange>	done;
+		private byte[]										query;
+		private InetSocketAddress[]							addrs;
+		private LineReceiver								rx;
+
+		AsyncQuery(NioTransport nio, long deadline) {
+			this.nio = nio;
+			this.policy = Utility.getRetryPolicy();
+			this.deadline = deadline;
+			this.list = new ArrayList<String>();
+			this.done = new CompletableFuture<NioTransport.Exchange>();
+		}
+
+		CompletableFuture<List<String>> start(Executor executor) {
+			// Same encoding as the PrintWriter of the blocking path.
+			query = (queryStr + "\r\n").getBytes( Charset.defaultCharset() );
+
+			within( Utility.getResolver().resolveAsync( hostname, port ), deadline ).whenComplete(
+					new BiConsumer<InetSocketAddress[], Throwable>() {
+						@Override
+						public void accept(InetSocketAddress[] resolved, Throwable e) {
+							if (null != e) {
+								done.completeExceptionally( e );
+								return;
+							}
+							addrs = resolved;
+							permit();
+						}
+					} );
+
+			return done.handleAsync( new BiFunction<NioTransport.Exchange, Throwable, List<String>>() {
+				@Override
+				public List<String> apply(NioTransport.Exchange ex, Throwable e) {
+					try {
+						end( ex, e );
+					}
+					finally {
+						inflight = null;
+						init();
+					}
+					return list;
+				}
+			}, executor );
+		}
+
+		private void permit() {
+			RateLimiter limiter = Utility.getRateLimiter();
+			long wait = 0;
+			if (null != limiter) {
+				long left = deadline - System.currentTimeMillis();
+				wait = (left <= 0) ? -1 : limiter.reserve( hostname, TimeUnit.MILLISECONDS.toNanos( left ) );
+			}
+			if (wait < 0) {
+				Utility.logInfo( "WhoisClient::acquirePermit no query permit: <host:" + hostname + "><query:"
+						+ queryStr + ">" );
+				done.complete( null );
+			}
+			else {
+				later( 1, TimeUnit.NANOSECONDS.toMillis( wait ) );
+			}
+		}
+
+		// Starts the attempt after the delay, on the timer thread
+		private void later(final int attempt, long delay) {
+			if (delay <= 0) {
+				send( attempt );
+				return;
+			}
+			WhoisExecutors.schedule( new Runnable() {
+				@Override
+				public void run() {
+					send( attempt );
+				}
+			}, delay, TimeUnit.MILLISECONDS );
+		}
+
+		private void send(final int attempt) {
+			if (aborted) {
+				done.complete( null );
+				return;
+			}
+			rx = new LineReceiver( list );
+			final NioTransport.Exchange ex = nio.query( addrs, query, RetryPolicy.capped( policy.getConnectTimeout(),
+					deadline ), policy.getReadTimeout(), deadline, rx );
+			track( ex );
+			ex.completion().thenRun( new Runnable() {
+				@Override
+				public void run() {
+					long retry = (ex.isConnected() || aborted) ? -1 : policy.retryDelay( attempt, deadline );
+					if (retry < 0)
+						done.complete( ex );
+					else
+						later( attempt + 1, retry );
+				}
+			} );
+		}
+
+		private void end(NioTransport.Exchange ex, Throwable e) {
+			Throwable cause = (e instanceof CompletionException && null != e.getCause()) ? e.getCause() : e;
+			IOException error = null;
+			if (cause instanceof IOException) {
+				error = ( IOException ) cause;
+			}
+			else if (null != cause) {
+				throw new CompletionException( cause );
+			}
+			else if (null != ex && ex.isConnected()) {
+				// Lines received before a read timeout are kept, as with the blocking socket.
+				try {
+					rx.end();
+					error = ex.getError();
+				}
+				catch (IOException ioe) {
+					error = ioe;
+				}
+			}
+
+			if (error instanceof UnknownHostException)
+				Utility.logWarn( "WhoisClient::domLookupAsync UnknownHostException: <host:" + hostname + "><query:"
+						+ queryStr + ">", error );
+			else if (null != error)
+				Utility.logWarn( "WhoisClient::domLookupAsync IOException: <host:" + hostname + "><query:" + queryStr
+						+ ">", error );
+		}
+	}
+
+	/**
+	 * @return a future of the same outcome, failed with a timeout if it is not done by the deadline
+	 */
+	private static <T> CompletableFuture<T> within(CompletableFuture<T> future, long deadline) {
+		final CompletableFuture<T> ret = new CompletableFuture<T>();
+		final ScheduledFuture<?> timer = WhoisExecutors.schedule( new Runnable() {
+			@Override
+			public void run() {
+				ret.completeExceptionally( new SocketTimeoutException( "Query budget exhausted" ) );
+			}
+		}, Math.max( 0, deadline - System.currentTimeMillis() ), TimeUnit.MILLISECONDS );
+		future.whenComplete( new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept(T value, Throwable e) {
+				timer.cancel( false );
+				if (null == e)
+					ret.complete( value );
+				else
+					ret.completeExceptionally( e );
+			}
+		} );
+		return ret;
+	}
+
+	/**
+	 * Takes the query permit of the host, waiting for it at most until the deadline. The wait ends with abort().
+	 */
+	private boolean acquirePermit(long deadline) {
+		RateLimiter limiter = Utility.getRateLimiter();
+		if (null == limiter)
+			return true;
+
+		long left = deadline - System.currentTimeMillis();
+		long wait = (left <= 0) ? -1 : limiter.reserve( hostname, TimeUnit.MILLISECONDS.toNanos( left ) );
+		if (wait >= 0 && awaitPermit( wait ))
+			return true;
+		Utility.logInfo( "WhoisClient::acquirePermit no query permit: <host:" + this.hostname + "><query:"
+				+ this.queryStr + ">" );
+		return false;
+	}
+
+	private boolean awaitPermit(long nanos) {
+		abortLock.lock();
+		try {
+			for (long left = nanos; left > 0 && !aborted;) {
+				left = abortSignal.awaitNanos( left );
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally {
+			abortLock.unlock();
+		}
+		return !aborted;
+	}
+
+	private void readLines(LineReader lr, List<String> list, Socket sock, RetryPolicy policy, long deadline)
+			throws IOException {
+		LineWindow window = new LineWindow( list );
+		while (lr.next()) {
+			if (0 == firstByteAt)
+				firstByteAt = System.currentTimeMillis();
+			// A server dripping its answer must not outlast the budget.
+			if (System.currentTimeMillis() >= deadline)
+				throw new SocketTimeoutException( "Query budget exhausted" );
+			sock.setSoTimeout( RetryPolicy.capped( policy.getReadTimeout(), deadline ) );
+			// Stopping closes the connection with the rest of the answer unread.
+			if (!window.line( lr ))
+				break;
+		}
+	}
+
+	/**
+	 * The lines of an answer between the line start and end patterns, less the skipped ones.
+	 */
+	private class LineWindow {
+		private final List<String>	list;
+		private final Pattern		start;
+		private final Pattern		end;
+		private final RawLineFilter	rawFilter;
+		private boolean				canRead;
+
+		LineWindow(List<String> list) {
+			this.list = list;
+			this.start = pnStart;
+			this.end = pnEnd;
+			this.rawFilter = (filter instanceof RawLineFilter) ? ( RawLineFilter ) filter : null;
+			this.canRead = (null == start);
+		}
+
+		/**
+		 * Takes the current line of the reader.
+		 * 
+		 * @return false if the rest of the answer is not wanted
+		 */
+		boolean line(LineReader lr) {
+			// Skip and window decisions work on the bytes; only kept lines are decoded.
+			if (null != rawFilter) {
+				if (rawFilter.skipLine( lr.buffer(), lr.start(), lr.length() ))
+					return true;
+			}
+			else if (skipLine( lr.string() ))
+				return true;
+			if (!canRead && null != start && start.matcher( lr.chars() ).find())
+				canRead = true;
+			if (canRead && null != end && end.matcher( lr.chars() ).find())
+				return false;
+			if (canRead) {
+				String kept = readingLine( lr.string() );
+				list.add( kept );
+				return lineRead( kept );
+			}
+			return lineOutside( lr.chars() );
+		}
+	}
+
+	/**
+	 * Feeds the answer of a NIO exchange to a line window as it is read, on the selector thread. The window wanting no
+	 * more lines ends the exchange, as it closes the blocking socket.
+	 */
+	private class LineReceiver implements NioTransport.Receiver {
+		private final LineReader	lr;
+		private final LineWindow	window;
+		private boolean				stopped;
+
+		LineReceiver(List<String> list) {
+			this.lr = new LineReader();
+			this.window = new LineWindow( list );
+		}
+
+		@Override
+		public boolean received(ByteBuffer data) throws IOException {
+			lr.feed( data );
+			return lines();
+		}
+
+		/**
+		 * Takes the last line, which no line end closed. Called once the exchange is over.
+		 */
+		void end() throws IOException {
+			lr.end();
+			lines();
+		}
+
+		private boolean lines() throws IOException {
+			while (!stopped && lr.next()) {
+				stopped = !window.line( lr );
+			}
+			return !stopped;
 		}
+	}
 
+	/**
+	 * Called with each line kept, in the order of the answer, as soon as it is read.
+	 * 
+	 * @param line
+	 *            The line as added to the result.
+	 * @return false to stop reading the answer
+	 */
+	boolean lineRead(String line) {
+		return true;
+	}
+
+	/**
+	 * Called with each line read before the line start pattern is met, which is not kept.
+	 * 
+	 * @return false to stop reading the answer
+	 */
+	boolean lineOutside(CharSequence line) {
+		return true;
 	}
 
 	/**
@@ -245,6 +705,14 @@ public class WhoisClient {
 	public void setServer(String server) {
 		String addr = server;
 
+		// An RDAP server is asked for the domain below its base URL.
+		boolean rdap = addr.regionMatches( true, 0, RDAP_PREFIX, 0, RDAP_PREFIX.length() );
+		if (rdap) {
+			addr = addr.substring( RDAP_PREFIX.length() );
+			if (addr.indexOf( "{domain}" ) < 0 && addr.indexOf( "/domain/" ) < 0)
+				addr += (addr.endsWith( "/" ) ? "" : "/") + "domain/{domain}";
+		}
+
 		// keep in url.
 		url = addr;
 
@@ -285,6 +753,9 @@ public class WhoisClient {
 		// Get the hostname
 		posPort = posPort <= -1 ? posAs : posPort;
 		hostname = addr.substring( 0, posPort ).toLowerCase();
+
+		if (rdap)
+			ptlType = "rdap";
 	}
 
 	// Interfaces
@@ -324,6 +795,21 @@ public class WhoisClient {
 		}
 	}
 
+	/**
+	 * set the precompiled LineStart/LineEnd/LineCatch patterns of a server; a missing one keeps the current pattern,
+	 * as the string setters do
+	 * 
+	 * @param profile
+	 */
+	void setLineFilters(ServerProfile profile) {
+		if (null != profile.getLineStart())
+			pnStart = profile.getLineStart();
+		if (null != profile.getLineEnd())
+			pnEnd = profile.getLineEnd();
+		if (null != profile.getLineCatch())
+			pnCatch = profile.getLineCatch();
+	}
+
 	public void setLineFilter(LineFilter filter) {
 		this.filter = filter;
 	}
@@ -352,64 +838,124 @@ public class WhoisClient {
 		return false;
 	}
 
-	private Socket getConnectSocket(SocketAddress addr) {
-		if (null == addr)
+	private Socket getConnectSocket(InetSocketAddress[] addrs, RetryPolicy policy, long deadline) {
+		if (Utility.isEmpty( addrs ))
 			return null;
-		Socket sock = null;
-		int retryTimes = 0;
-		while (retryTimes < 6) {
+		for (int attempt = 1;; attempt++) {
+			Socket sock = null;
+			long start = System.currentTimeMillis();
 			try {
-				proxy = Utility.getProxy();
+				proxy = Utility.getProxy( hostname );
 				if (null != proxy) {
 					String[] ss = proxy.split( ":" );
 					if (ss.length > 1) {
 						Proxy p = new Proxy( Proxy.Type.SOCKS, new InetSocketAddress( ss[0], Integer.parseInt( ss[1] ) ) );
 						sock = new Socket( p );
-						sock.setSoTimeout( DEFAULT_TIMEOUT );
 					}
 				}
+				else if (addrs.length > 1) {
+					// Race all addresses of the host.
+					HappyEyeballs race = new HappyEyeballs( addrs );
+					if (!track( race ))
+						return null;
+					sock = race.connect( RetryPolicy.capped( policy.getConnectTimeout(), deadline ) );
+					if (!track( sock ))
+						return null;
+					return sock;
+				}
 				else {
 					sock = new Socket();
 				}
-				sock.connect( addr, 1000 );
+				if (null != sock) {
+					if (!track( sock ))
+						return null;
+					sock.connect( addrs[0], RetryPolicy.capped( policy.getConnectTimeout(), deadline ) );
+					connectMillis = System.currentTimeMillis() - start;
+					return sock;
+				}
 			}
 			catch (Exception e) {
-				// Nothing to do.
+				Utility.logDebug( "WhoisClient::getConnectSocket attempt " + attempt + " failed: <host:" + this.hostname
+						+ "><proxy:" + proxy + ">", e );
+				if (null != proxy && !aborted)
+					Utility.reportProxy( proxy, hostname, false, System.currentTimeMillis() - start, -1 );
 			}
-			finally {
-				if (sock.isConnected())
-					return sock;
-				retryTimes++;
+			if (null != sock) {
+				try {
+					sock.close();
+				}
+				catch (IOException e) {
+					// do nothing
+				}
 			}
+			if (!policy.awaitRetry( attempt, deadline ) || aborted)
+				return null;
 		}
-		return null;
 	}
-	
+
+	/**
+	 * Gives the queries from now on one time budget which ends at the deadline, so a lookup of several hops can not
+	 * take longer than the budget of the retry policy. 0 gives each query a budget of its own.
+	 * 
+	 * @param deadline
+	 */
+	void setDeadline(long deadline) {
+		lookupDeadline = deadline;
+	}
+
+	/**
+	 * @return the end of the time budget of the running lookup, or of a query started now if it has none
+	 */
+	long getDeadline() {
+		long d = lookupDeadline;
+		return (0 != d) ? d : Utility.getRetryPolicy().deadline( System.currentTimeMillis() );
+	}
+
 	public String getProxy() {
 		return proxy;
 	}
 
-	private void trustAllHosts() {
-		// Create a trust manager that does not validate certificate chains
-		TrustManager[] trustAllCerts = new TrustManager[] { new X509TrustManager() {
-			public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-				return new java.security.cert.X509Certificate[] {};
-			}
+	/**
+	 * Aborts the running query and closes its connection. Queries started afterwards return no data.
+	 */
+	public void abort() {
+		aborted = true;
+		abortLock.lock();
+		try {
+			abortSignal.signalAll();
+		}
+		finally {
+			abortLock.unlock();
+		}
+		close( inflight );
+	}
 
-			public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-			}
+	public boolean isAborted() {
+		return aborted;
+	}
 
-			public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-			}
-		} };
+	private boolean track(Object conn) {
+		inflight = conn;
+		if (aborted) {
+			close( conn );
+			return false;
+		}
+		return true;
+	}
 
-		// Install the all-trusting trust manager
+	private void close(Object conn) {
 		try {
-			SSLContext sc = SSLContext.getInstance( "TLS" );
-			sc.init( null, trustAllCerts, new java.security.SecureRandom() );
-			HttpsURLConnection.setDefaultSSLSocketFactory( sc.getSocketFactory() );
+			if (conn instanceof Socket)
+				(( Socket ) conn).close();
+			else if (conn instanceof HttpURLConnection)
+				(( HttpURLConnection ) conn).disconnect();
+			else if (conn instanceof NioTransport.Exchange)
+				(( NioTransport.Exchange ) conn).cancel();
+			else if (conn instanceof HappyEyeballs)
+				(( HappyEyeballs ) conn).cancel();
 		}
-		catch (Exception e) {
+		catch (IOException e) {
+			// do nothing
 		}
 	}
 
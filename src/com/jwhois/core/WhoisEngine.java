@@ -1,7 +1,24 @@
 package com.jwhois.core;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 public class WhoisEngine extends WhoisClient {
@@ -9,12 +26,23 @@ public class WhoisEngine extends WhoisClient {
 	private static final String	REGEX_SKIP				= "(^[^0-9a-z]+$)";
 	private static final String	REGEX_ESCAPE_HTML		= "\\s*<[a-zA-Z]+[^>]*>\\s*([^<>]*)\\s*</[a-zA-Z]+\\s*>\\s*";
 
+	private static final Pattern	PN_SKIP					= Pattern.compile( REGEX_SKIP, Pattern.CASE_INSENSITIVE );
+	private static final Pattern	PN_ESCAPE_HTML			= Pattern.compile( REGEX_ESCAPE_HTML );
+
 	private WhoisMap			whoisMap;
 	private boolean				nonIcann;
 	private boolean				deepWhois;
 	private String				domain;
-	private Pattern				pnSkip;
 	private boolean				isVaildDom;
+	private String				servername;
+	private String				tld;
+	private List<String>		hopServers;
+	private List<List<String>>	hopData;
+	private boolean				earlyClose;
+
+	// The parser the lines of the running query are fed to, and if a referral may end the query
+	private LineParser			feeding;
+	private boolean				feedReferral;
 
 	// Constructor
 	public WhoisEngine(String domain) {
@@ -30,177 +58,617 @@ public class WhoisEngine extends WhoisClient {
 		this.whoisMap = null;
 		this.nonIcann = false;
 		this.deepWhois = deepWhois;
-		this.pnSkip = Pattern.compile( REGEX_SKIP, Pattern.CASE_INSENSITIVE );
-		this.setLineFilter( new LineFilter() {
-			@Override
-			public String filterLine(String line) {
-				line = line.replaceAll( REGEX_ESCAPE_HTML, "$1" );
-				return line;
+		this.setLineFilter( new EngineLineFilter() );
+	}
+
+	private static class EngineLineFilter implements LineFilter, RawLineFilter {
+		@Override
+		public String filterLine(String line) {
+			line = PN_ESCAPE_HTML.matcher( line ).replaceAll( "$1" );
+			return line;
+		}
+
+		@Override
+		public String filterHtmlLine(String line) {
+			line = PN_ESCAPE_HTML.matcher( line ).replaceAll( "$1" );
+			return line;
+		}
+
+		@Override
+		public boolean skipLine(String line) {
+			return "".equals( line ) || PN_SKIP.matcher( line ).find();
+		}
+
+		@Override
+		public boolean skipLine(byte[] buf, int off, int len) {
+			// Same as REGEX_SKIP: the line has no [0-9a-zA-Z]. UTF-8 multibyte sequences never contain ASCII bytes.
+			for (int i = off; i < off + len; i++) {
+				byte b = buf[i];
+				if ((b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z'))
+					return false;
 			}
+			return true;
+		}
+
+		@Override
+		public boolean skipHtmlLine(String line) {
+			return Utility.isEmpty( line );
+		}
+	}
+
+	/**
+	 * build the WhoisMap
+	 * 
+	 * @return the WhoisMap
+	 */
+	public WhoisMap build() {
+		if (!isVaildDom)
+			return null;
+
+		// One time budget for both hops
+		setDeadline( Utility.getRetryPolicy().deadline( System.currentTimeMillis() ) );
+		try {
+			if (!registryLookup())
+				return whoisMap;
 
+			return registrarLookup();
+		}
+		finally {
+			setDeadline( 0 );
+		}
+	}
+
+	/**
+	 * build the WhoisMap asynchronously on the given executor
+	 * 
+	 * @param executor
+	 * @return the future WhoisMap
+	 */
+	public CompletableFuture<WhoisMap> buildAsync(Executor executor) {
+		return buildAsync( executor, 0, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * build the WhoisMap asynchronously. The registry hop and the registrar (deep whois) hop run as two separate
+	 * stages on the executor; with a {@link NioTransport} installed, no thread waits for the answer of a port 43 query
+	 * in between. Cancelling the returned future, or letting it time out, closes the connection in use.
+	 * 
+	 * @param executor
+	 * @param timeout
+	 *            the time budget of the whole lookup, 0 for none
+	 * @param unit
+	 * @return the future WhoisMap
+	 */
+	public CompletableFuture<WhoisMap> buildAsync(final Executor executor, long timeout, TimeUnit unit) {
+		final CompletableFuture<WhoisMap> result = new CompletableFuture<WhoisMap>();
+		if (!isVaildDom) {
+			result.complete( null );
+			return result;
+		}
+
+		// One time budget for both hops, from the submit on
+		setDeadline( Utility.getRetryPolicy().deadline( System.currentTimeMillis() ) );
+		CompletableFuture.completedFuture( null ).thenComposeAsync(
+				new Function<Object, CompletableFuture<Boolean>>() {
+					@Override
+					public CompletableFuture<Boolean> apply(Object none) {
+						return registryLookupAsync( executor );
+					}
+				}, executor ).thenComposeAsync( new Function<Boolean, CompletableFuture<WhoisMap>>() {
+			@Override
+			public CompletableFuture<WhoisMap> apply(Boolean goOn) {
+				if (!goOn || result.isDone())
+					return CompletableFuture.completedFuture( whoisMap );
+				return registrarLookupAsync( executor );
+			}
+		}, executor ).whenComplete( new BiConsumer<WhoisMap, Throwable>() {
 			@Override
-			public String filterHtmlLine(String line) {
-				line = line.replaceAll( REGEX_ESCAPE_HTML, "$1" );
-				return line;
+			public void accept(WhoisMap map, Throwable e) {
+				if (null == e)
+					result.complete( map );
+				else
+					result.completeExceptionally( (e instanceof CompletionException && null != e.getCause())
+							? e.getCause()
+							: e );
 			}
+		} );
 
+		final ScheduledFuture<?> timer = (timeout > 0) ? WhoisExecutors.schedule( new Runnable() {
 			@Override
-			public boolean skipLine(String line) {
-				return "".equals( line ) || pnSkip.matcher( line ).find();
+			public void run() {
+				result.completeExceptionally( new TimeoutException( "WHOIS lookup timed out: " + domain ) );
 			}
+		}, timeout, unit ) : null;
 
+		result.whenComplete( new BiConsumer<WhoisMap, Throwable>() {
 			@Override
-			public boolean skipHtmlLine(String line) {
-				return Utility.isEmpty( line );
+			public void accept(WhoisMap map, Throwable e) {
+				if (null != timer)
+					timer.cancel( false );
+				// Cancelled or timed out: release the connection of the running stage.
+				if (null != e)
+					abort();
+				setDeadline( 0 );
 			}
 		} );
+		return result;
+	}
+
+	// Whether a name lookup gives addresses before the budget of the lookup is spent
+	private boolean isResolved(CompletableFuture<InetAddress[]> lookup) {
+		try {
+			long left = getDeadline() - System.currentTimeMillis();
+			return left > 0 && !Utility.isEmpty( lookup.get( left, TimeUnit.MILLISECONDS ) );
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException e) {
+			return false;
+		}
+		catch (TimeoutException e) {
+			return false;
+		}
 	}
 
 	/**
-	 * build the WhoisMap
+	 * The registry hop: find the registry server, query and parse it.
 	 * 
-	 * @return the WhoisMap
+	 * @return false if the lookup ends here
 	 */
-	@SuppressWarnings("unchecked")
-	public WhoisMap build() {
-		if (!isVaildDom)
-			return null;
+	private boolean registryLookup() {
+		if (registryStart())
+			return true;
+		LineParser fed = registryServer();
+		return null != fed && registryParsed( fed, lookup( fed, deepWhois ) );
+	}
 
+	// The registry hop of buildAsync
+	private CompletableFuture<Boolean> registryLookupAsync(Executor executor) {
+		if (registryStart())
+			return CompletableFuture.completedFuture( true );
+		final LineParser fed = registryServer();
+		if (null == fed)
+			return CompletableFuture.completedFuture( false );
+		return lookupAsync( fed, deepWhois, executor ).thenApply( new Function<List<String>, Boolean>() {
+			@Override
+			public Boolean apply(List<String> rawdata) {
+				return registryParsed( fed, rawdata );
+			}
+		} );
+	}
+
+	/**
+	 * Starts the registry hop.
+	 * 
+	 * @return true if the map was built before: the registry answer is in it already
+	 */
+	private boolean registryStart() {
 		if (null == whoisMap)
 			whoisMap = new WhoisMap();
 
-		String servername = "";
-		String server = "";
-		String tld = "";
-		List<String> rawdata = null;
+		servername = "";
+		tld = "";
+		hopServers = null;
+		hopData = null;
 
-		if (Utility.isEmpty( whoisMap.deepServer() )) {
+		return !Utility.isEmpty( whoisMap.deepServer() );
+	}
 
-			// Build array of all possible tld's for that domain
-			List<String> tldtest = Utility.buildTLDs( domain );
+	/**
+	 * Finds and sets the registry server.
+	 * 
+	 * @return the parser to feed its answer to, null if there is no server to query
+	 */
+	private LineParser registryServer() {
+		String server = "";
 
-			// Test in special list first
-			for (String t : tldtest) {
-				String s = XMLHelper.getSpecialServer( t, nonIcann );
-				if (!Utility.isEmpty( s )) {
-					if (s.equals( "break" ))
-						return whoisMap;
-					server = s;
-					tld = t;
+		// Build array of all possible tld's for that domain
+		List<String> tldtest = Utility.buildTLDs( domain );
+
+		// Test in special list first
+		for (String t : tldtest) {
+			String s = XMLHelper.getSpecialServer( t, nonIcann );
+			if (!Utility.isEmpty( s )) {
+				if (s.equals( "break" ))
+					return null;
+				server = s;
+				tld = t;
+				// An RDAP registry links to the registrar's answer, the others of the list are final.
+				if (!s.regionMatches( true, 0, RDAP_PREFIX, 0, RDAP_PREFIX.length() ))
 					this.deepWhois = false;
-					break;
-				}
+				break;
 			}
+		}
 
-			// Test with default server
-			if (Utility.isEmpty( server )) {
-				String cname = null;
-				for (String t : tldtest) {
-					cname = t + DEFAULT_SERVER_DOMAIN;
+		// Test with default server
+		if (Utility.isEmpty( server )) {
+			// Resolve all candidates at once, then take the first one in order which exists.
+			DnsResolver resolver = Utility.getResolver();
+			List<CompletableFuture<InetAddress[]>> lookups = new ArrayList<CompletableFuture<InetAddress[]>>();
+			for (String t : tldtest) {
+				lookups.add( resolver.resolveAsync( t + DEFAULT_SERVER_DOMAIN ) );
+			}
 
-					if (Utility.isEmpty( Utility.getAddressbyName( cname ) ))
-						continue;
+			String cname = null;
+			for (int i = 0; i < tldtest.size(); i++) {
+				String t = tldtest.get( i );
+				cname = t + DEFAULT_SERVER_DOMAIN;
 
-					// Check if has special parameters
-					if ("com".equals( t ) || "net".equals( t ) || ("jobs".equals( t )) || ("cc".equals( t ))) {
-						cname += "?domain ={domain}";
-					}
-					else if ("de".equals( t )) {
-						cname += "?-T dn,ace {domain}";
-					}
+				if (!isResolved( lookups.get( i ) ))
+					continue;
 
-					server = cname;
-					tld = t;
-					break;
+				// Check if has special parameters
+				if ("com".equals( t ) || "net".equals( t ) || ("jobs".equals( t )) || ("cc".equals( t ))) {
+					cname += "?domain ={domain}";
+				}
+				else if ("de".equals( t )) {
+					cname += "?-T dn,ace {domain}";
 				}
-			}
 
-			if (Utility.isEmpty( server ) || Utility.isEmpty( tld )) {
-				// return an empty map
-				return whoisMap;
+				server = cname;
+				tld = t;
+				break;
 			}
+		}
 
-			// Set the server
-			setServer( server );
+		if (Utility.isEmpty( server ) || Utility.isEmpty( tld )) {
+			// return an empty map
+			return null;
+		}
 
-			servername = hostname;
+		// Set the server
+		setServer( server );
 
-			// Set if has LineStart or LineEnd pattern
-			setLineStartFilter( XMLHelper.getTranslateAttr( "LineStart", servername ) );
-			setLineEndFilter( XMLHelper.getTranslateAttr( "LineEnd", servername ) );
-			setLineCatchFilter( XMLHelper.getTranslateAttr( "LineCatch", servername ) );
+		servername = serverName();
 
-			// Set the necessary fields
-			whoisMap.set( "regyinfo.type", "domain" );
-			whoisMap.set( "regyinfo.domain", domain );
-			whoisMap.set( "regrinfo.domain.name", domain );
-			List<String> serverList = new ArrayList<String>();
-			whoisMap.set( "regyinfo.servers", serverList );
-			serverList.add( servername );
+		// Set if has LineStart or LineEnd pattern
+		ServerProfile profile = XMLHelper.getProfile( servername );
+		setLineFilters( profile );
 
-			// Get the raw data
-			rawdata = domLookup( domain, tld );
-			if (Utility.isEmpty( rawdata )) {
-				return whoisMap;
-			}
+		// Set the necessary fields
+		initFields( whoisMap, domain, servername );
 
-			whoisMap.set( "rawdata", rawdata );
+		// The raw data is parsed as it is read
+		return new LineParser( profile );
+	}
 
-			// Parse the map 1st.
-			whoisMap.parse( servername );
+	/**
+	 * Ends the registry hop with the answer of its server.
+	 * 
+	 * @return false if the lookup ends here
+	 */
+	private boolean registryParsed(LineParser fed, List<String> rawdata) {
+		if (Utility.isEmpty( rawdata )) {
+			return false;
 		}
 
-		List<String> serverList = ( List<String> ) whoisMap.get( "regyinfo.servers" );
+		whoisMap.set( WhoisMap.RAWDATA, rawdata );
 
+		// Parse the map 1st, then keep the rawdata compact.
+		whoisMap.parse( servername, fed );
+		rawdata = RawLines.of( rawdata );
+		whoisMap.set( WhoisMap.RAWDATA, rawdata );
+
+		hopServers = new ArrayList<String>();
+		hopData = new ArrayList<List<String>>();
+		hopServers.add( servername );
+		hopData.add( rawdata );
+		return true;
+	}
+
+	/**
+	 * The registrar hop: follow the referral of the registry (deep whois) and merge its answer.
+	 * 
+	 * @return the WhoisMap
+	 */
+	private WhoisMap registrarLookup() {
+		LineParser fed = registrarServer();
+		return registrarParsed( fed, (null == fed) ? null : lookup( fed, false ) );
+	}
+
+	// The registrar hop of buildAsync
+	private CompletableFuture<WhoisMap> registrarLookupAsync(Executor executor) {
+		final LineParser fed = registrarServer();
+		if (null == fed)
+			return CompletableFuture.completedFuture( registrarParsed( null, null ) );
+		return lookupAsync( fed, false, executor ).thenApply( new Function<List<String>, WhoisMap>() {
+			@Override
+			public WhoisMap apply(List<String> rawdata) {
+				return registrarParsed( fed, rawdata );
+			}
+		} );
+	}
+
+	/**
+	 * Sets the registrar server of the referral, if deep whois follows it.
+	 * 
+	 * @return the parser to feed its answer to, null if there is no server to query
+	 */
+	private LineParser registrarServer() {
 		String deepServer = whoisMap.deepServer();
 
 		if (!Utility.isEmpty( deepServer ) && Utility.hasProxyFactory()) {
-			whoisMap.remove( "rawdata" );
+			whoisMap.remove( WhoisMap.RAWDATA );
 		}
 
-		boolean hasWhoisRecord = (null == whoisMap.get( "regyinfo.hasrecord" ))
-				? false
-				: ( Boolean ) whoisMap.get( "regyinfo.hasrecord" );
-
 		// If set deepWhois, do deep whois query.
-		if (deepWhois && !Utility.isEmpty( deepServer )) {
-			setServer( deepServer );
+		if (!deepWhois || Utility.isEmpty( deepServer ))
+			return null;
 
-			if (hostname.equals( servername ))
-				return whoisMap;
+		setServer( deepServer );
+		// The referral is to the registry itself
+		if (serverName().equals( servername ))
+			return null;
 
-			servername = hostname;
-			setLineStartFilter( XMLHelper.getTranslateAttr( "LineStart", servername ) );
-			setLineEndFilter( XMLHelper.getTranslateAttr( "LineEnd", servername ) );
-			setLineCatchFilter( XMLHelper.getTranslateAttr( "LineCatch", servername ) );
+		servername = serverName();
+		ServerProfile profile = XMLHelper.getProfile( servername );
+		setLineFilters( profile );
+		return new LineParser( profile );
+	}
 
-			rawdata = domLookup( domain, tld );
-			if (Utility.isEmpty( rawdata ))
-				return whoisMap;
+	/**
+	 * Ends the registrar hop with the answer of its server, if it was queried.
+	 * 
+	 * @return the WhoisMap
+	 */
+	private WhoisMap registrarParsed(LineParser fed, List<String> rawdata) {
+		boolean hasWhoisRecord = hasRecord( whoisMap );
 
-			whoisMap.remove( "regrinfo.domain" );
-			whoisMap.remove( "regyinfo.whois" );
-			whoisMap.remove( "regyinfo.registrar" );
-			whoisMap.set( "rawdata", rawdata );
+		if (null == fed && deepWhois && !Utility.isEmpty( whoisMap.deepServer() )) {
+			// Not queried, the referral is to the registry itself
+			archive( 0 );
+			return whoisMap;
+		}
 
-			serverList.add( servername );
+		if (null != fed) {
+			if (Utility.isEmpty( rawdata )) {
+				archive( 0 );
+				return whoisMap;
+			}
 
-			whoisMap.parse( servername );
-			deepServer = whoisMap.deepServer();
+			rawdata = mergeHop( whoisMap, servername, rawdata, fed );
+			// A map built before has no hops recorded, it is not archived.
+			if (null != hopServers) {
+				hopServers.add( servername );
+				hopData.add( rawdata );
+			}
 
 			if (!hasWhoisRecord) {
-				hasWhoisRecord = (null == whoisMap.get( "regyinfo.hasrecord" ))
-						? false
-						: ( Boolean ) whoisMap.get( "regyinfo.hasrecord" );
+				hasWhoisRecord = hasRecord( whoisMap );
 			}
 		}
 
 		// Fixed
-		whoisMap.set( "regyinfo.hasrecord", hasWhoisRecord ? true : false );
+		whoisMap.set( WhoisMap.HASRECORD, hasWhoisRecord ? true : false );
+		archive( RawArchive.FLAG_FIXED );
 
 		return whoisMap;
 	}
 
+	/**
+	 * @return the name the server set is known by: its host name, "rdap:" and its host name for RDAP
+	 */
+	private String serverName() {
+		return "rdap".equals( ptlType ) ? RDAP_PREFIX + hostname : hostname;
+	}
+
+	/**
+	 * Sets the fields of the registry hop.
+	 */
+	private static void initFields(WhoisMap map, String domain, String server) {
+		map.set( "regyinfo.type", "domain" );
+		map.set( "regyinfo.domain", domain );
+		map.set( "regrinfo.domain.name", domain );
+		List<String> serverList = new ArrayList<String>();
+		map.set( WhoisMap.SERVERS, serverList );
+		serverList.add( canonical( server ) );
+	}
+
+	private static String canonical(String value) {
+		Canonicalizer c = Utility.getCanonicalizer();
+		return (null == c) ? value : c.canonical( value );
+	}
+
+	/**
+	 * Queries the server set, feeding the lines to a parser as they arrive.
+	 * 
+	 * @param referral
+	 *            true if the query may end at the referral to a registrar, with early close on
+	 */
+	private List<String> lookup(LineParser fed, boolean referral) {
+		feeding = fed;
+		feedReferral = referral;
+		try {
+			return domLookup( domain, tld );
+		}
+		finally {
+			feeding = null;
+		}
+	}
+
+	// The lookup of buildAsync
+	private CompletableFuture<List<String>> lookupAsync(LineParser fed, boolean referral, Executor executor) {
+		feeding = fed;
+		feedReferral = referral;
+		return domLookupAsync( domain, tld, executor ).whenComplete( new BiConsumer<List<String>, Throwable>() {
+			@Override
+			public void accept(List<String> rawdata, Throwable e) {
+				feeding = null;
+			}
+		} );
+	}
+
+	@Override
+	boolean lineRead(String line) {
+		LineParser lp = feeding;
+		if (null == lp)
+			return true;
+		if (null == line) {
+			// Nothing to parse; the parse goes over the rawdata again.
+			feeding = null;
+			return true;
+		}
+		lp.feed( line );
+
+		if (!earlyClose)
+			return true;
+		if (isNoMatch( lp, line ))
+			return false;
+
+		// The registrar hop replaces the domain fields, the rest of the registry answer is not needed.
+		if (feedReferral && null != lp.getReferral()) {
+			String deep = WhoisMap.redirect( lp.getReferral() );
+			return Utility.isEmpty( deep ) || Utility.getHostName( deep ).equalsIgnoreCase( servername );
+		}
+		return true;
+	}
+
+	@Override
+	boolean lineOutside(CharSequence line) {
+		LineParser lp = feeding;
+		return !(earlyClose && null != lp && isNoMatch( lp, line ));
+	}
+
+	private static boolean isNoMatch(LineParser lp, CharSequence line) {
+		return lp.getProfile().getNoMatch().matcher( line ).find();
+	}
+
+	/**
+	 * Parses the answer of a registrar hop over the map of the registry.
+	 * 
+	 * @return the rawdata as kept in the map
+	 */
+	private static RawLines mergeHop(WhoisMap map, String server, List<String> rawdata) {
+		return mergeHop( map, server, rawdata, null );
+	}
+
+	@SuppressWarnings("unchecked")
+	private static RawLines mergeHop(WhoisMap map, String server, List<String> rawdata, LineParser fed) {
+		map.remove( "regrinfo.domain" );
+		map.remove( WhoisMap.WHOIS );
+		map.remove( WhoisMap.REGISTRAR );
+		map.set( WhoisMap.RAWDATA, rawdata );
+
+		(( List<String> ) map.get( WhoisMap.SERVERS )).add( canonical( server ) );
+
+		map.parse( server, fed );
+		RawLines raw = RawLines.of( rawdata );
+		map.set( WhoisMap.RAWDATA, raw );
+		return raw;
+	}
+
+	private static boolean hasRecord(WhoisMap map) {
+		return (null == map.get( WhoisMap.HASRECORD )) ? false : ( Boolean ) map.get( WhoisMap.HASRECORD );
+	}
+
+	/**
+	 * Appends the hops of the lookup to the raw archive, if one is installed.
+	 */
+	private void archive(int flags) {
+		RawArchive archive = Utility.getRawArchive();
+		if (null == archive || null == hopServers)
+			return;
+
+		if (null == whoisMap.get( WhoisMap.RAWDATA ))
+			flags |= RawArchive.FLAG_NO_RAWDATA;
+		try {
+			archive.append( domain, hopServers, hopData, flags );
+		}
+		catch (IOException e) {
+			Utility.logWarn( "WhoisEngine::archive IOException: <domain:" + domain + ">", e );
+		}
+	}
+
+	/**
+	 * Rebuilds the WhoisMap of an archived lookup: the same parse steps as {@link #build()}, without the network.
+	 * 
+	 * @param rec
+	 * @return the WhoisMap
+	 */
+	static WhoisMap replay(RawArchive.Record rec) {
+		List<String> servers = rec.getServers();
+		List<List<String>> rawdata = rec.getRawdata();
+
+		WhoisMap map = new WhoisMap();
+		initFields( map, rec.getDomain(), servers.get( 0 ) );
+		map.set( WhoisMap.RAWDATA, rawdata.get( 0 ) );
+		map.parse( servers.get( 0 ) );
+		map.set( WhoisMap.RAWDATA, RawLines.of( rawdata.get( 0 ) ) );
+
+		boolean hasWhoisRecord = hasRecord( map );
+		for (int i = 1; i < servers.size(); i++) {
+			mergeHop( map, servers.get( i ), rawdata.get( i ) );
+			if (!hasWhoisRecord)
+				hasWhoisRecord = hasRecord( map );
+		}
+
+		if ((rec.getFlags() & RawArchive.FLAG_NO_RAWDATA) != 0)
+			map.remove( WhoisMap.RAWDATA );
+		if ((rec.getFlags() & RawArchive.FLAG_FIXED) != 0)
+			map.set( WhoisMap.HASRECORD, hasWhoisRecord ? true : false );
+		return map;
+	}
+
+	/**
+	 * build the WhoisMaps of many domains concurrently, running each lookup on its own virtual thread (or on pooled
+	 * platform threads if the JVM has no virtual threads).
+	 * 
+	 * @param domains
+	 * @param deepWhois
+	 * @return the WhoisMaps keyed by domain, in the order of the given domains
+	 */
+	public static Map<String, WhoisMap> buildAll(Collection<String> domains, boolean deepWhois) {
+		ExecutorService executor = WhoisExecutors.newVirtualThreadExecutor();
+		try {
+			return buildAll( domains, deepWhois, executor );
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * build the WhoisMaps of many domains concurrently on the given executor
+	 * 
+	 * @param domains
+	 * @param deepWhois
+	 * @param executor
+	 * @return the WhoisMaps keyed by domain, in the order of the given domains
+	 */
+	public static Map<String, WhoisMap> buildAll(Collection<String> domains, final boolean deepWhois,
+			ExecutorService executor) {
+		Map<String, Future<WhoisMap>> futures = new LinkedHashMap<String, Future<WhoisMap>>();
+		for (final String dom : domains) {
+			futures.put( dom, executor.submit( new Callable<WhoisMap>() {
+				@Override
+				public WhoisMap call() throws Exception {
+					return new WhoisEngine( dom, deepWhois ).build();
+				}
+			} ) );
+		}
+
+		Map<String, WhoisMap> ret = new LinkedHashMap<String, WhoisMap>();
+		for (Map.Entry<String, Future<WhoisMap>> entry : futures.entrySet()) {
+			try {
+				ret.put( entry.getKey(), entry.getValue().get() );
+			}
+			catch (ExecutionException e) {
+				Utility.logWarn( "WhoisEngine::buildAll ExecutionException: <domain:" + entry.getKey() + ">", e );
+				ret.put( entry.getKey(), null );
+			}
+			catch (InterruptedException e) {
+				for (Future<WhoisMap> f : futures.values()) {
+					f.cancel( true );
+				}
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return ret;
+	}
+
 	// Options
 	/**
 	 * If set this flag true, that means this query supports the tld's of Non ICANN. Default value is false.
@@ -220,4 +688,15 @@ public class WhoisEngine extends WhoisClient {
 		deepWhois = flag;
 	}
 
+	/**
+	 * If set this flag true, the connection is closed as soon as the answer says the domain is not registered, or, with
+	 * deep whois, as soon as it gives the whois server of the registrar. The rawdata then ends at that line, and the
+	 * fields the server gives after it are not read. Default value is false.
+	 * 
+	 * @param flag
+	 */
+	public void setEarlyClose(boolean flag) {
+		earlyClose = flag;
+	}
+
 }
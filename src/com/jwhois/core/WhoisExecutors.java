@@ -0,0 +1,153 @@
+package com.jwhois.core;
+
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for running WHOIS lookups.
+ *
+ * Virtual threads are looked up by reflection, so the library still runs on JVMs without them and falls back to
+ * platform threads there.
+ */
+public final class WhoisExecutors {
+	private static final int		DNS_THREADS	= 16;
+
+	private static final Method		NEW_VIRTUAL_EXECUTOR;
+	private static final Method		IS_VIRTUAL;
+
+	static {
+		Method newExecutor = null;
+		Method isVirtual = null;
+		try {
+			newExecutor = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+			isVirtual = Thread.class.getMethod( "isVirtual" );
+		}
+		catch (Exception e) {
+			newExecutor = null;
+			isVirtual = null;
+		}
+		NEW_VIRTUAL_EXECUTOR = newExecutor;
+		IS_VIRTUAL = isVirtual;
+	}
+
+	private WhoisExecutors() {
+	}
+
+	/**
+	 * check if the running JVM supports virtual threads
+	 *
+	 * @return [flag]
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return null != NEW_VIRTUAL_EXECUTOR;
+	}
+
+	/**
+	 * Creates an executor which starts a new virtual thread for each lookup. Falls back to a cached pool of daemon
+	 * platform threads if virtual threads are not available.
+	 *
+	 * @return the executor
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		if (null != NEW_VIRTUAL_EXECUTOR) {
+			try {
+				return ( ExecutorService ) NEW_VIRTUAL_EXECUTOR.invoke( null );
+			}
+			catch (Exception e) {
+				Utility.logWarn( "WhoisExecutors::newVirtualThreadExecutor Exception: ", e );
+			}
+		}
+		Utility.logInfo( "WhoisExecutors::newVirtualThreadExecutor virtual threads are not available, using platform threads" );
+		return Executors.newCachedThreadPool( new DaemonThreadFactory( "jwhois-lookup-" ) );
+	}
+
+	/**
+	 * check if the current thread is a virtual thread
+	 *
+	 * @return [flag]
+	 */
+	public static boolean isVirtualThread() {
+		if (null == IS_VIRTUAL)
+			return false;
+		try {
+			return ( Boolean ) IS_VIRTUAL.invoke( Thread.currentThread() );
+		}
+		catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Resolves a host name through the installed {@link DnsResolver}, which caches the answers and runs the native
+	 * resolver call on a small pool of platform threads, so a virtual thread just parks until it is done.
+	 *
+	 * @param host
+	 * @return all addresses of the host
+	 * @throws UnknownHostException
+	 */
+	public static InetAddress[] getAllByName(String host) throws UnknownHostException {
+		return Utility.getResolver().resolve( host );
+	}
+
+	/**
+	 * Runs a task once after the given delay on the shared timer thread of the library.
+	 * 
+	 * @param task
+	 * @param delay
+	 * @param unit
+	 * @return the scheduled task
+	 */
+	public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return Timer.EXECUTOR.schedule( task, delay, unit );
+	}
+
+	/**
+	 * @return the platform threads which run the blocking resolver calls
+	 */
+	static Executor dnsExecutor() {
+		return DnsPool.EXECUTOR;
+	}
+
+	// Created on first use only.
+	private static class Timer {
+		static final ScheduledThreadPoolExecutor	EXECUTOR;
+
+		static {
+			EXECUTOR = new ScheduledThreadPoolExecutor( 1, new DaemonThreadFactory( "jwhois-timer-" ) );
+			EXECUTOR.setRemoveOnCancelPolicy( true );
+		}
+	}
+
+	// Created on first use only.
+	private static class DnsPool {
+		static final ExecutorService	EXECUTOR	= Executors.newFixedThreadPool( DNS_THREADS,
+														new DaemonThreadFactory( "jwhois-dns-" ) );
+	}
+
+	static class DaemonThreadFactory implements ThreadFactory {
+		private final String		prefix;
+		private final AtomicInteger	count;
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+			this.count = new AtomicInteger();
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread( r, prefix + count.incrementAndGet() );
+			t.setDaemon( true );
+			return t;
+		}
+	}
+
+}
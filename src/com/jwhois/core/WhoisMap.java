@@ -1,13 +1,12 @@
 package com.jwhois.core;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class WhoisMap {
 
@@ -41,17 +40,39 @@ public class WhoisMap {
 	 *  - rawdata
 	 */
 
-	// line type B : key = group(1); value = group(3)
-	private final static String	REGEX_LINEB	= "^\\s*([\u0000-\u0039\u003B-\u007E]+)\\s*(:|[\\.]{3,}|\\s{5,})\\s*([^\\/][^\\/].*)\\s*$";
-
-	private static Pattern		pnLineB;
-
-	static {
-		pnLineB = Pattern.compile( REGEX_LINEB, Pattern.CASE_INSENSITIVE );
-	}
+	// The paths the lookups walk on every answer
+	static final WhoisPath		RAWDATA			= WhoisPath.of( "rawdata" );
+	static final WhoisPath		HASRECORD		= WhoisPath.of( "regyinfo.hasrecord" );
+	static final WhoisPath		WHOIS			= WhoisPath.of( "regyinfo.whois" );
+	static final WhoisPath		WHOISDETAIL		= WhoisPath.of( "regyinfo.whoisdetail" );
+	static final WhoisPath		REGISTRAR		= WhoisPath.of( "regyinfo.registrar" );
+	static final WhoisPath		SERVERS			= WhoisPath.of( "regyinfo.servers" );
+	static final WhoisPath		CREATED			= WhoisPath.of( "regrinfo.domain.created" );
+	static final WhoisPath		CHANGED			= WhoisPath.of( "regrinfo.domain.changed" );
+	static final WhoisPath		EXPIRES			= WhoisPath.of( "regrinfo.domain.expires" );
+
+	// The fields with few distinct values across records, shared through the canonicalizer
+	static final List<WhoisPath>	CANONICAL		= Collections.unmodifiableList( Arrays.asList( REGISTRAR, WHOIS,
+														WHOISDETAIL, SERVERS, WhoisPath.of( "regyinfo.referrer" ),
+														WhoisPath.of( "regrinfo.domain.sponsor" ),
+														WhoisPath.of( "regrinfo.domain.nserver" ),
+														WhoisPath.of( "regrinfo.domain.status" ) ) );
+
+	// Markers of at(): no such field, a level above is not a map
+	private static final Object	MISSING			= new Object();
+	private static final Object	UNKNOWN			= new Object();
+
+	/** The time of a date that is not given or not understood. */
+	public static final long	NO_DATE			= DateNormalizer.NONE;
 
 	private Map<String, Object>	whoisMap;
 	private String				deepSvr;
+	private long				created			= NO_DATE;
+	private long				changed			= NO_DATE;
+	private long				expires			= NO_DATE;
+
+	// The translation of the last parse, left for the first read in lazy mode
+	private Pending				pending;
 
 	public WhoisMap() {
 		this.whoisMap = new LinkedHashMap<String, Object>();
@@ -61,52 +82,79 @@ public class WhoisMap {
 		this.whoisMap = whoisMap;
 	}
 
-	@SuppressWarnings("unchecked")
 	void parse(String server) {
+		parse( server, null );
+	}
+
+	/**
+	 * Parses the rawdata, taking the RDMap of a line parser fed with it while it was read.
+	 *
+	 * @param fed
+	 *            The parser the lines were fed to, or null. It is used only if it was fed with the rawdata.
+	 */
+	@SuppressWarnings("unchecked")
+	void parse(String server, LineParser fed) {
+		materialize();
+		setDates( NO_DATE, NO_DATE, NO_DATE );
+
 		if (null == whoisMap || Utility.isEmpty( server )) {
-			set( "regyinfo.hasrecord", false );
+			set( HASRECORD, false );
 			return;
 		}
 
-		List<String> rawdata = ( List<String> ) get( "rawdata" );
+		List<String> rawdata = ( List<String> ) get( RAWDATA );
 		if (Utility.isEmpty( rawdata )) {
-			set( "regyinfo.hasrecord", false );
+			set( HASRECORD, false );
 			return;
 		}
 
-		// prepare xml data
-		Map<String, String> translates = XMLHelper.getTranslateMap( "List", server );
-		Map<String, String> contacts = XMLHelper.getTranslateMap( "Contacts", server );
-		Map<String, String> contactInfo = XMLHelper.getTranslateMap( "ContactInfo", server );
-
-		String parser = XMLHelper.getTranslateAttr( "Parser", server );
-		if (Utility.isEmpty( parser ))
-			parser = "a";
+		// prepare xml data, compiled once per server
+		ServerProfile profile = XMLHelper.getProfile( server );
 
-		// Generate the RDMap ( the Raw Data Map )
-		Map<String, Object> rdMap = null;
-
-		if ("a".equals( parser )) {
-			rdMap = parseA( rawdata, contacts );
-		}
-		else if ("b".equals( parser )) {
-			String blockHead = XMLHelper.getTranslateAttr( "BlockHead", server );
-			String contactHandle = XMLHelper.getTranslateAttr( "ContactHandle", server );
-			String[] blockHeads = Utility.isEmpty( blockHead ) ? null : blockHead.split( "," );
-			String[] contactHandles = Utility.isEmpty( contactHandle ) ? null : contactHandle.split( "," );
-			rdMap = parseB( rawdata, contacts, blockHeads, contactHandles );
-		}
-		else if ("c".equals( parser )) {
-			rdMap = parseC( rawdata );
+		// RDAP is structured already: the JSON is mapped straight into the fields, there is nothing for the lazy mode to
+		// put off. The hasrecord flag keeps its place before the fields.
+		if ("rdap".equals( profile.getParser() )) {
+			set( HASRECORD, false );
+			set( HASRECORD, RdapParser.parse( rawdata, this ) );
+			finish( this, profile );
+			return;
 		}
 
+		// Generate the RDMap ( the Raw Data Map ), tokenizing every line once for all stages
+		LineParser lp = fed;
+		if (null == lp || lp.getProfile() != profile || !lp.isFedWith( rawdata ))
+			lp = LineParser.of( profile, rawdata );
+		TokenStream tokens = lp.getTokens();
+		Map<String, Object> rdMap = lp.result();
+
 		// Keep the hasrecord flag in whoisMap
-		set( "regyinfo.hasrecord", !rdMap.isEmpty() );
+		set( HASRECORD, !rdMap.isEmpty() );
 
 		if (Utility.isEmpty( rdMap )) {
 			return;
 		}
 
+		// The lazy mode stops here: hasrecord is known, the sections wait for the first read that needs them. The
+		// tokens are not kept, the contact lines are tokenized again if the sections are read.
+		if (Utility.isLazyParse()) {
+			pending = new Pending( rdMap, profile );
+			return;
+		}
+
+		translate( rdMap, profile, tokens );
+		finish( this, profile );
+	}
+
+	/**
+	 * Translates the RDMap into the whois map.
+	 *
+	 * @param tokens
+	 *            the tokens of the answer, null to tokenize the contact lines again
+	 */
+	@SuppressWarnings("unchecked")
+	private void translate(Map<String, Object> rdMap, ServerProfile profile, TokenStream tokens) {
+		String parser = profile.getParser();
+
 		// Translate the RDMap
 		for (String key : rdMap.keySet()) {
 			Object val = rdMap.get( key );
@@ -115,38 +163,43 @@ public class WhoisMap {
 				continue;
 
 			// Parse Contact Info.
-			if (!Utility.isEmpty( contacts ) && contacts.containsValue( key )) {
-				String[] keys = key.split( "," );
-
-				for (String k : keys) {
-					set( k, parseContact( ( List<String> ) val, contactInfo, parser ) );
+			WhoisPath[] keys = profile.getContactPaths( key );
+			if (null != keys) {
+				for (WhoisPath k : keys) {
+					set( k, parseContact( ( List<String> ) val, profile, parser, tokens ) );
 				}
 			}
 
 			// Do Translate.
-			if (!Utility.isEmpty( translates ) && translates.containsKey( key )) {
-				String translate = translates.get( key );
-
-				if (!Utility.isEmpty( translate )) {
-					String[] trans = translate.split( "," );
-
-					for (String t : trans) {
-						if (t.startsWith( "k|" )) {
-							set( t.substring( 2 ), key + ": " + val );
-						}
-						else {
-							set( t, val, true );
-						}
+			String[] trans = profile.getTranslates( key );
+			if (null != trans) {
+				WhoisPath[] paths = profile.getTranslatePaths( key );
+				for (int i = 0; i < trans.length; i++) {
+					if (trans[i].startsWith( "k|" )) {
+						set( paths[i], key + ": " + val );
+					}
+					else {
+						set( paths[i], val, true );
 					}
 				}
 			}
 		}
+	}
+
+	/**
+	 * Sets the dates and the deep server from the translated fields of a map, this one or a preview.
+	 */
+	private void finish(WhoisMap source, ServerProfile profile) {
+		// The dates as epoch milliseconds, next to the strings of the registry
+		setDates( DateNormalizer.toMillis( getString( source.get( CREATED ) ), profile ), DateNormalizer.toMillis(
+				getString( source.get( CHANGED ) ), profile ), DateNormalizer.toMillis( getString( source.get( EXPIRES ) ),
+				profile ) );
 
 		// Need more deep?
-		deepSvr = getString( get( "regyinfo.whois" ) );
+		deepSvr = getString( source.get( WHOIS ) );
 
 		if (Utility.isEmpty( deepSvr )) {
-			String tmp = getString( get( "regyinfo.registrar" ) );
+			String tmp = getString( source.get( REGISTRAR ) );
 			tmp = XMLHelper.getRegistrarServer( tmp );
 			if (!Utility.isEmpty( tmp )) {
 				tmp = tmp.toLowerCase();
@@ -160,27 +213,100 @@ public class WhoisMap {
 		}
 
 		if (Utility.isEmpty( deepSvr )) {
-			deepSvr = getString( get( "regyinfo.whoisdetail" ) );
+			deepSvr = getString( source.get( WHOISDETAIL ) );
 		}
 
-		if (!Utility.isEmpty( deepSvr )) {
-			String redirec = XMLHelper.getRedirectServer( Utility.getHostName( deepSvr ) );
+		deepSvr = redirect( deepSvr );
+	}
+
+	/**
+	 * @return the server a referral leads to after the redirects of the XML, empty if it leads nowhere
+	 */
+	static String redirect(String server) {
+		if (!Utility.isEmpty( server )) {
+			String redirec = XMLHelper.getRedirectServer( Utility.getHostName( server ) );
 			if (!Utility.isEmpty( redirec )) {
 				if ("common".equals( redirec ))
-					deepSvr = XMLHelper.getCommonServer();
+					return XMLHelper.getCommonServer();
 				else if ("break".equals( redirec ))
-					deepSvr = "";
+					return "";
 				else
-					deepSvr = redirec;
+					return redirec;
 			}
 		}
+		return server;
+	}
+
+	/**
+	 * Does the translation left by a lazy parse.
+	 */
+	private void materialize() {
+		if (null == pending)
+			return;
+
+		Pending p = pending;
+		pending = null;
+		translate( p.rdMap, p.profile, null );
+		finish( this, p.profile );
+	}
+
+	/**
+	 * Gets the dates and the deep server of a lazy parse from a preview of their fields, or translates all if they
+	 * can not be previewed.
+	 */
+	private void preview() {
+		if (null == pending || pending.previewed)
+			return;
+
+		WhoisMap preview = pending.preview( this, WHOIS, REGISTRAR, WHOISDETAIL, CREATED, CHANGED, EXPIRES );
+		if (null == preview) {
+			materialize();
+			return;
+		}
+		finish( preview, pending.profile );
+		pending.previewed = true;
 	}
 
 	String deepServer() {
+		preview();
 		return deepSvr;
 	}
 
-	private Object parseContact(List<String> contactList, Map<String, String> contactInfo, String parser) {
+	/**
+	 * @return The regrinfo.domain.created date in epoch milliseconds, NO_DATE if none.
+	 */
+	public long getCreatedTime() {
+		preview();
+		return created;
+	}
+
+	/**
+	 * @return The regrinfo.domain.changed date in epoch milliseconds, NO_DATE if none.
+	 */
+	public long getChangedTime() {
+		preview();
+		return changed;
+	}
+
+	/**
+	 * @return The regrinfo.domain.expires date in epoch milliseconds, NO_DATE if none.
+	 */
+	public long getExpiresTime() {
+		preview();
+		return expires;
+	}
+
+	void setDates(long created, long changed, long expires) {
+		this.created = created;
+		this.changed = changed;
+		this.expires = expires;
+	}
+
+	private static LineToken lookup(TokenStream tokens, String line) {
+		return (null == tokens) ? LineToken.tokenize( line ) : tokens.lookup( line );
+	}
+
+	private Object parseContact(List<String> contactList, ServerProfile profile, String parser, TokenStream tokens) {
 		Object ret = contactList;
 
 		if (Utility.isEmpty( contactList ))
@@ -193,9 +319,9 @@ public class WhoisMap {
 			// The 1st line needs to be parse separately.
 			String lineOne = contactList.remove( 0 );
 			if (!Utility.isEmpty( lineOne )) {
-				Matcher matcher = pnLineB.matcher( lineOne );
-				if (matcher.find()) {
-					String val = matcher.group( 3 );
+				LineToken t = lookup( tokens, lineOne );
+				if (t.isMatched()) {
+					String val = t.rawValue();
 					if (!Utility.isEmpty( val ))
 						list.add( val );
 				}
@@ -203,18 +329,18 @@ public class WhoisMap {
 		}
 
 		// Deal with other lines.
+		Map<String, String> contactInfo = profile.getContactInfo();
 		String cache = null;
 		for (String line : contactList) {
 			if (!Utility.isEmpty( contactInfo )) {
-				Matcher m = pnLineB.matcher( line );
-				if (m.find()) {
+				LineToken t = lookup( tokens, line );
+				if (t.isMatched()) {
 					cache = null;
-					String key = m.group( 1 ).trim().toLowerCase();
+					String key = t.key();
 					if (contactInfo.containsKey( key )) {
 						cache = contactInfo.get( key );
-						String[] caches = cache.split( "," );
-						for (String s : caches) {
-							String mk = s, mv = m.group( 3 ).trim();
+						for (String s : profile.getContactInfoPaths( key )) {
+							String mk = s, mv = t.value();
 							if (s.startsWith( "k|" )) {
 								mk = s.substring( 2 );
 								mv = key + ": " + mv;
@@ -250,187 +376,23 @@ public class WhoisMap {
 		return ret;
 	}
 
-	/*
-	 *  == WHOIS RAWDATA TYPE A ==
-	 *  
-	 *  k:v
-	 *  k:v
-	 *  ...
-	 *  a contact
-	 *  	... (contact info)
-	 *  	...
-	 *  another contact
-	 *  	... (contact info)
-	 *  	...
-	 *  k:v
-	 *  ...
-	 */
-	private Map<String, Object> parseA(List<String> rawdata, Map<String, String> contacts) {
-		WhoisMap rdMap = new WhoisMap();
-
-		List<String> cList = null;
-		boolean cRead = false;
-
-		for (String line : rawdata) {
-			if (!Utility.isEmpty( contacts )) {
-				String test = line.trim().toLowerCase();
-				// If we find a contact prefix, read to its end and save as line list.
-				for (String key : contacts.keySet()) {
-					if (test.startsWith( key )) {
-						String val = contacts.get( key );
-
-						if ("break".equals( val )) {
-							cRead = false;
-							break;
-						}
-						else {
-							cList = new ArrayList<String>();
-							rdMap.getMap().put( val, cList );
-							cRead = true;
-							break;
-						}
-					}
-				}
-				if (cRead) {
-					cList.add( line.trim() );
-					continue;
-				}
-			}
-
-			// We only takes the line matches REGEX_BLINE
-			Matcher m = pnLineB.matcher( line );
-			if (m.find()) {
-				rdMap.set( m.group( 1 ).trim().toLowerCase(), m.group( 3 ).trim(), true );
-			}
-		}
-		return rdMap.getMap();
-	}
-
-	private boolean inArray(Object o, Object[] arr) {
-		if (o == null || arr == null || arr.length == 0)
-			return false;
-		for (Object a : arr) {
-			if (o.equals( a )) {
-				return true;
-			}
-		}
-		return false;
-	}
-
-	/*
-	 *  == WHOIS RAWDATA TYPE B ==
-	 *  
-	 *  k:v
-	 *  k:v
-	 *  contact:handle
-	 *  contact:handle
-	 *  ...
-	 *  [block head]:handle
-	 *  	... (contact info)
-	 *  	...
-	 *  [block head]:handle
-	 *  	... (contact info)
-	 *  	...
-	 *  k:v
-	 *  ...
-	 */
-	private Map<String, Object> parseB(List<String> rawdata, Map<String, String> contacts, String[] blockHeads,
-			String[] contactHandles) {
-		WhoisMap rdMap = new WhoisMap();
-
-		Map<String, String> cMap = new HashMap<String, String>();
-		Map<String, List<String>> hdlMap = new HashMap<String, List<String>>();
-		List<String> cList = null;
-		boolean cRead = false;
-
-		L1: for (String line : rawdata) {
-			Matcher m = pnLineB.matcher( line );
-			if (m.find()) {
-				String key = m.group( 1 ).trim().toLowerCase();
-				String val = m.group( 3 ).trim();
-				if (!Utility.isEmpty( blockHeads ) && !Utility.isEmpty( contactHandles ) && inArray( key, blockHeads )) {
-					if ("break".equals( contacts.get( key ) )) {
-						cRead = false;
-						continue;
-					}
-					else {
-						cList = new ArrayList<String>();
-						cRead = true;
-					}
-				}
-				if (cRead && (null != cList)) {
-					cList.add( line );
-					if (inArray( key, contactHandles )) {
-						hdlMap.put( val, cList );
-					}
-					continue;
-				}
-
-				// If we find a contact, save it for secondary finding.
-				if (!Utility.isEmpty( contacts ) && contacts.containsKey( key )) {
-					cMap.put( contacts.get( key ), val );
-					continue L1;
-				}
-				rdMap.set( key, val, true );
-			}
-		}
-
-		// Rebuild the contacts, if have some.
-		if (!Utility.isEmpty( cMap )) {
-			for (String contact : cMap.keySet()) {
-				String hdl = cMap.get( contact );
-				for (String key : hdlMap.keySet()) {
-					if (hdl.startsWith( key )) {
-						rdMap.getMap().put( contact, hdlMap.get( key ) );
-					}
-				}
-			}
-		}
-		return rdMap.getMap();
-	}
-
-	/*
-	 *  == WHOIS RAWDATA TYPE C ==
-	 *  
-	 *  k ...... v
-	 *  k ...... v
-	 *  k ...... v
-	 *  ...
-	 */
-	private Map<String, Object> parseC(List<String> rawdata) {
-		WhoisMap rdMap = new WhoisMap();
-		for (String line : rawdata) {
-			Matcher m = pnLineB.matcher( line );
-			if (m.find()) {
-				String key = m.group( 1 ).trim().toLowerCase();
-				String val = m.group( 3 ).trim();
-				rdMap.set( key, val, true );
-			}
-		}
-		return rdMap.getMap();
-	}
-
 	/**
 	 * Sets the map's content indexing by the mapping key. And also, it is safe for giving a null or empty string value
 	 * which will do nothing to the current map. This method default not replace the value in map.
 	 * 
-	 * @param whoisMap
-	 *            The given map.
 	 * @param key
 	 *            The mapping key. (etc. "key1.key2.key3")
 	 * @param value
 	 *            The value to set.
 	 */
 	public void set(String key, Object value) {
-		set( key, value, false );
+		set( WhoisPath.of( key ), value, false );
 	}
 
 	/**
 	 * Sets the map's content indexing by the mapping key. And also, it is safe for giving a null or empty string value
 	 * which will do nothing to the current map.
 	 * 
-	 * @param whoisMap
-	 *            The given map.
 	 * @param key
 	 *            The mapping key. (etc. "key1.key2.key3")
 	 * @param value
@@ -438,34 +400,65 @@ public class WhoisMap {
 	 * @param append
 	 *            The flag that identify whether to append when setting value.
 	 */
-	@SuppressWarnings("unchecked")
 	public void set(String key, Object value, boolean append) {
-		if (null == whoisMap || Utility.isEmpty( key ) || null == value)
+		set( WhoisPath.of( key ), value, append );
+	}
+
+	/**
+	 * Sets the map's content at the path, not replacing the value in map.
+	 * 
+	 * @param path
+	 *            The mapping path.
+	 * @param value
+	 *            The value to set.
+	 */
+	public void set(WhoisPath path, Object value) {
+		set( path, value, false );
+	}
+
+	/**
+	 * Sets the map's content at the path, creating the maps of the levels on the way.
+	 * 
+	 * @param path
+	 *            The mapping path.
+	 * @param value
+	 *            The value to set.
+	 * @param append
+	 *            The flag that identify whether to append when setting value.
+	 */
+	@SuppressWarnings("unchecked")
+	public void set(WhoisPath path, Object value, boolean append) {
+		if (null == whoisMap || null == path || path.isEmpty() || null == value)
 			return;
 
+		// Translating later must give the same map: only a field the translation leaves alone may be replaced first.
+		if (null != pending) {
+			preview();
+			Object v = at( path.setKeys() );
+			if (null != pending && (pending.touches( path.setKeys() ) || MISSING == v || UNKNOWN == v || shared( v )))
+				materialize();
+		}
+
 		// we need only the map
 		if (value instanceof WhoisMap) {
 			value = (( WhoisMap ) value).getMap();
 		}
 
-		String[] keys = key.split( "\\b\\.\\b" );
-		String sKey = keys[0];
-		Object sObj = whoisMap.get( sKey );
-
-		if (keys.length > 1) {
+		String[] keys = path.setKeys();
+		Map<String, Object> map = whoisMap;
+		for (int i = 0; i < keys.length - 1; i++) {
+			Object sObj = map.get( keys[i] );
 			if (null == sObj) {
 				sObj = new LinkedHashMap<String, Object>();
-				whoisMap.put( sKey, sObj );
+				map.put( keys[i], sObj );
 			}
+			map = ( Map<String, Object> ) sObj;
+		}
 
-			String leftKey = null;
-			int pos = -1;
-			if ((pos = key.indexOf( '.' )) > -1)
-				leftKey = key.substring( pos + 1 );
+		String sKey = keys[keys.length - 1];
+		Object sObj = map.get( sKey );
 
-			new WhoisMap( ( Map<String, Object> ) sObj ).set( leftKey, value, append );
-		}
-		else if (null != sObj && append) {
+		if (null != sObj && append) {
 			if (sObj instanceof Map) {
 				(( Map<String, Object> ) sObj).put( sKey, value );
 			}
@@ -473,10 +466,10 @@ public class WhoisMap {
 				List<String> list = ( List<String> ) sObj;
 
 				if (value instanceof Map) {
-					Map<String, String> map = ( Map<String, String> ) value;
+					Map<String, String> vmap = ( Map<String, String> ) value;
 
-					for (String key2 : map.keySet()) {
-						addValue( list, key2 + " " + map.get( key2 ) );
+					for (String key2 : vmap.keySet()) {
+						addValue( list, key2 + " " + vmap.get( key2 ) );
 					}
 				}
 				else if (value instanceof List) {
@@ -491,84 +484,111 @@ public class WhoisMap {
 				}
 			}
 			else {
-				List<String> list = new ArrayList<String>();
-				whoisMap.put( sKey, list );
+				List<String> list = new ValueList();
+				map.put( sKey, list );
 				addValue( list, sObj.toString() );
 				addValue( list, value.toString() );
 			}
 		}
 		else {
-			whoisMap.put( sKey, value );
+			map.put( sKey, value );
 		}
 	}
 
 	/**
 	 * Gets the map's content indexing by the mapping key.
 	 * 
-	 * @param whoisMap
-	 *            The given map.
 	 * @param key
 	 *            The mapping key. (etc. "key1.key2.key3")
 	 * @return The object where could be found in the map.
 	 */
-	@SuppressWarnings("unchecked")
 	public Object get(String key) {
-		if ((null == whoisMap) || Utility.isEmpty( key ))
-			return null;
-
-		String[] keys = key.split( "\\." );
-		String sKey = keys[0];
-		Object sObj = whoisMap.get( sKey );
+		return get( WhoisPath.of( key ) );
+	}
 
-		if (keys.length > 1 && null != sObj && sObj instanceof Map) {
-			String leftKey = "";
-			int pos = key.indexOf( '.' );
-			if (pos != -1)
-				leftKey = key.substring( pos + 1 );
+	/**
+	 * Gets the map's content at the path. A level that is not a map ends the walk and is returned.
+	 * 
+	 * @param path
+	 *            The mapping path.
+	 * @return The object where could be found in the map.
+	 */
+	@SuppressWarnings("unchecked")
+	public Object get(WhoisPath path) {
+		if (null == whoisMap || null == path || path.isEmpty())
+			return null;
 
-			return new WhoisMap( ( Map<String, Object> ) sObj ).get( leftKey );
+		// A single value set by the translation can be previewed, anything else needs the translation.
+		if (null != pending && pending.touches( path.getKeys() )) {
+			WhoisMap preview = pending.preview( this, path );
+			Object v = (null == preview) ? null : preview.get( path );
+			if (null != preview && (null == v || v instanceof String || v instanceof Boolean))
+				return v;
+			materialize();
+		}
+		else if (null != pending && shared( at( path.getKeys() ) )) {
+			materialize();
 		}
 
-		return sObj;
+		String[] keys = path.getKeys();
+		Map<String, Object> map = whoisMap;
+		for (int i = 0; i < keys.length; i++) {
+			Object sObj = map.get( keys[i] );
+			if (!(sObj instanceof Map) || (i == keys.length - 1 && path.getEnds()))
+				return sObj;
+			map = ( Map<String, Object> ) sObj;
+		}
+		return null;
 	}
 
 	/**
 	 * Removes the whois map with the map key.
 	 * 
-	 * @param whoisMap
-	 *            The whois map.
 	 * @param key
 	 *            The map key.
 	 * @return The removed object.
 	 */
-	@SuppressWarnings("unchecked")
 	public Object remove(String key) {
-		if ((null == whoisMap) || Utility.isEmpty( key ))
-			return null;
-
-		String[] keys = key.split( "\\." );
-		String sKey = keys[0];
-		Object sObj = whoisMap.get( sKey );
+		return remove( WhoisPath.of( key ) );
+	}
 
-		if (null == sObj)
+	/**
+	 * Removes the content at the path. A level that is not a map ends the walk and is returned, but not removed.
+	 * 
+	 * @param path
+	 *            The mapping path.
+	 * @return The removed object.
+	 */
+	@SuppressWarnings("unchecked")
+	public Object remove(WhoisPath path) {
+		if (null == whoisMap || null == path || path.isEmpty())
 			return null;
 
-		String rightKey = "";
-		int pos = key.indexOf( '.' );
-		if (pos != -1)
-			rightKey = key.substring( pos + 1 );
-
-		if (keys.length > 1 && sObj instanceof Map) {
-			return new WhoisMap( ( Map<String, Object> ) sObj ).remove( rightKey );
+		if (null != pending) {
+			preview();
+			if (null != pending && (pending.touches( path.getKeys() ) || shared( at( path.getKeys() ) )))
+				materialize();
 		}
 
-		if (Utility.isEmpty( rightKey ))
-			whoisMap.remove( sKey );
-
-		return sObj;
+		String[] keys = path.getKeys();
+		Map<String, Object> map = whoisMap;
+		for (int i = 0; i < keys.length; i++) {
+			Object sObj = map.get( keys[i] );
+			if (null == sObj)
+				return null;
+			if (sObj instanceof Map && !(i == keys.length - 1 && path.getEnds())) {
+				map = ( Map<String, Object> ) sObj;
+				continue;
+			}
+			if (path.isRemovable( i ))
+				map.remove( keys[i] );
+			return sObj;
+		}
+		return null;
 	}
 
 	public String getJSON() {
+		materialize();
 		return JSONParser.toJSONString( whoisMap );
 	}
 
@@ -593,6 +613,12 @@ public class WhoisMap {
 		if (null == list || Utility.isEmpty( value ))
 			return;
 
+		// The lists built here keep their lower cased values.
+		if (list instanceof ValueList) {
+			(( ValueList ) list).addAbsorbing( value );
+			return;
+		}
+
 		// remove duplicate nodes
 		String v = value.toLowerCase();
 		for (String l : list) {
@@ -613,6 +639,7 @@ public class WhoisMap {
 	}
 
 	public Map<String, Object> getMap() {
+		materialize();
 		return whoisMap;
 	}
 
@@ -627,7 +654,7 @@ public class WhoisMap {
 		if (whoisMap.isEmpty())
 			return true;
 
-		if (Utility.isEmpty( ( List<String> ) get( "rawdata" ) ))
+		if (Utility.isEmpty( ( List<String> ) get( RAWDATA ) ))
 			return true;
 
 		return false;
@@ -637,4 +664,193 @@ public class WhoisMap {
 		return !isEmpty();
 	}
 
-}
+	/**
+	 * @return the value at the levels; MISSING if a level is missing, UNKNOWN if a level above is not a map
+	 */
+	@SuppressWarnings("unchecked")
+	private Object at(String[] keys) {
+		Map<String, Object> map = whoisMap;
+		for (int i = 0; i < keys.length - 1; i++) {
+			Object o = map.get( keys[i] );
+			if (null == o)
+				return MISSING;
+			if (!(o instanceof Map))
+				return UNKNOWN;
+			map = ( Map<String, Object> ) o;
+		}
+		String key = keys[keys.length - 1];
+		return map.containsKey( key ) ? map.get( key ) : MISSING;
+	}
+
+	/**
+	 * The translation appends to a list in place, and a list set as a whole may be found at two fields. A translation
+	 * left for later must not change such a list behind a field read or set now.
+	 *
+	 * @return true if the value is a list found at more than one field of the map
+	 */
+	private boolean shared(Object value) {
+		return (value instanceof List) && count( whoisMap, value ) > 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int count(Map<String, Object> map, Object value) {
+		int n = 0;
+		for (Object o : map.values()) {
+			if (o == value)
+				n++;
+			else if (o instanceof Map)
+				n += count( ( Map<String, Object> ) o, value );
+		}
+		return n;
+	}
+
+	/**
+	 * The RDMap of a lazy parse, waiting for its translation.
+	 */
+	private static class Pending {
+		private final Map<String, Object>	rdMap;
+		private final ServerProfile			profile;
+		private boolean						previewed;
+
+		Pending(Map<String, Object> rdMap, ServerProfile profile) {
+			this.rdMap = rdMap;
+			this.profile = profile;
+		}
+
+		/**
+		 * @return true if the translation may set something at, above or below the levels
+		 */
+		boolean touches(String[] keys) {
+			for (WhoisPath t : profile.getTargets()) {
+				if (related( t.setKeys(), keys ))
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Replays the translation of the given fields alone, on a copy of their values. Fields set as a whole by the
+		 * translation of a line are previewed; a field set above or below, by a contact, or sharing a list with a field
+		 * not previewed needs the full translation.
+		 *
+		 * @return a map with the fields as the translation would leave them, null if it needs the full translation
+		 */
+		@SuppressWarnings("unchecked")
+		WhoisMap preview(WhoisMap map, WhoisPath... paths) {
+			WhoisMap ret = new WhoisMap();
+			for (WhoisPath p : paths) {
+				if (!p.getEnds() || !Arrays.equals( p.setKeys(), p.getKeys() ))
+					return null;
+
+				Object v = map.at( p.getKeys() );
+				if (v instanceof List && !map.shared( v ))
+					ret.set( p, new ArrayList<String>( ( List<String> ) v ) );
+				else if (v instanceof String || v instanceof Boolean)
+					ret.set( p, v );
+				else if (null != v && MISSING != v)
+					return null;
+			}
+
+			String[] keys = rdMap.keySet().toArray( new String[rdMap.size()] );
+			for (int i = 0; i < keys.length; i++) {
+				String key = keys[i];
+				Object val = rdMap.get( key );
+				if (null == val)
+					continue;
+
+				WhoisPath[] contacts = profile.getContactPaths( key );
+				if (null != contacts) {
+					for (WhoisPath k : contacts) {
+						if (null != match( k, paths ))
+							return null;
+					}
+					for (WhoisPath t : profile.getContactTargets()) {
+						if (null != match( t, paths ))
+							return null;
+					}
+				}
+
+				String[] trans = profile.getTranslates( key );
+				if (null == trans)
+					continue;
+
+				WhoisPath[] targets = profile.getTranslatePaths( key );
+				Object copy = (val instanceof List) ? new ArrayList<String>( ( List<String> ) val ) : val;
+				boolean shared = false;
+				for (int t = 0; t < trans.length; t++) {
+					boolean keyed = trans[t].startsWith( "k|" );
+					WhoisPath target = targets[t];
+					WhoisPath p = match( target, paths );
+					if (null == p)
+						continue;
+					if (null != contacts || !Arrays.equals( target.setKeys(), p.getKeys() ))
+						return null;
+
+					if (keyed) {
+						ret.set( target, key + ": " + val );
+					}
+					else {
+						shared |= (copy != val) && MISSING == ret.at( target.setKeys() );
+						ret.set( target, copy, true );
+					}
+				}
+
+				// The list of the line is set as is, and may be shared with a target not previewed; appending to that
+				// one later would change the previewed field too.
+				if (shared && appended( keys, i + 1, trans, targets, paths ))
+					return null;
+			}
+			return ret;
+		}
+
+		/**
+		 * @return true if a line from the given one on may append to one of the targets not previewed
+		 */
+		private boolean appended(String[] keys, int from, String[] trans, WhoisPath[] targets, WhoisPath[] paths) {
+			for (int t = 0; t < trans.length; t++) {
+				WhoisPath target = targets[t];
+				if (trans[t].startsWith( "k|" ) || null != match( target, paths ))
+					continue;
+
+				for (int j = from; j < keys.length; j++) {
+					if (null == rdMap.get( keys[j] ))
+						continue;
+					String[] later = profile.getTranslates( keys[j] );
+					if (null != later) {
+						WhoisPath[] laterPaths = profile.getTranslatePaths( keys[j] );
+						for (int l = 0; l < later.length; l++) {
+							if (!later[l].startsWith( "k|" ) && related( target.setKeys(), laterPaths[l].setKeys() ))
+								return true;
+						}
+					}
+					if (null != profile.getContactPaths( keys[j] )) {
+						for (WhoisPath c : profile.getContactTargets()) {
+							if (related( target.setKeys(), c.setKeys() ))
+								return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		private static WhoisPath match(WhoisPath target, WhoisPath[] paths) {
+			for (WhoisPath p : paths) {
+				if (related( target.setKeys(), p.getKeys() ))
+					return p;
+			}
+			return null;
+		}
+
+		// one is the start of the other
+		private static boolean related(String[] a, String[] b) {
+			int n = Math.min( a.length, b.length );
+			for (int i = 0; i < n; i++) {
+				if (!a[i].equals( b[i] ))
+					return false;
+			}
+			return true;
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package com.jwhois.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A mapping key of {@link WhoisMap} (etc. "key1.key2.key3") split into its levels once. {@link #of(String)} hands out
+ * the same instance for the same key, so the constant paths of the parsers are split only the first time.
+ *
+ * The levels follow the string API exactly: set splits on a dot between two word characters, get and remove on every
+ * dot, and each level continues after the first dot of the key it was given.
+ */
+public final class WhoisPath {
+	private static final String						SET_SPLIT	= "\\b\\.\\b";
+	private static final String						GET_SPLIT	= "\\.";
+
+	// The parsers set the keys of the raw lines too, so only so many are kept.
+	private static final int						MAX_CACHED	= 4096;
+	private static final ConcurrentHashMap<String, WhoisPath>	CACHE	= new ConcurrentHashMap<String, WhoisPath>();
+
+	static final WhoisPath							EMPTY		= new WhoisPath();
+
+	private final String							key;
+	private final String[]							setKeys;
+	private final String[]							getKeys;
+	private final boolean[]							removable;
+	private final boolean							getEnds;
+
+	private WhoisPath() {
+		this.key = "";
+		this.setKeys = null;
+		this.getKeys = null;
+		this.removable = null;
+		this.getEnds = false;
+	}
+
+	private WhoisPath(String key) {
+		this.key = key;
+
+		if (key.indexOf( '.' ) < 0) {
+			this.setKeys = new String[] { key };
+			this.getKeys = this.setKeys;
+			this.removable = new boolean[] { true };
+			this.getEnds = true;
+			return;
+		}
+
+		this.setKeys = split( key, SET_SPLIT );
+
+		// get and remove go on after the first dot while the split has more parts, and stop at a blank rest.
+		List<String> keys = new ArrayList<String>();
+		List<Boolean> rm = new ArrayList<Boolean>();
+		boolean ends = false;
+		String k = key;
+		while (!Utility.isEmpty( k )) {
+			String[] parts = k.split( GET_SPLIT );
+			if (parts.length == 0)
+				break;
+
+			int pos = k.indexOf( '.' );
+			String rest = (pos > -1) ? k.substring( pos + 1 ) : "";
+			keys.add( parts[0] );
+			rm.add( Utility.isEmpty( rest ) );
+			if (parts.length == 1) {
+				ends = true;
+				break;
+			}
+			k = rest;
+		}
+		this.getKeys = keys.toArray( new String[keys.size()] );
+		this.removable = new boolean[rm.size()];
+		for (int i = 0; i < removable.length; i++) {
+			removable[i] = rm.get( i );
+		}
+		this.getEnds = ends;
+	}
+
+	/**
+	 * @param key
+	 *            The mapping key. (etc. "key1.key2.key3")
+	 * @return The path of the key, the empty path for a null or blank key.
+	 */
+	public static WhoisPath of(String key) {
+		if (null == key)
+			return EMPTY;
+
+		WhoisPath path = CACHE.get( key );
+		if (null == path) {
+			path = Utility.isEmpty( key ) ? EMPTY : new WhoisPath( key );
+			if (CACHE.size() < MAX_CACHED) {
+				WhoisPath old = CACHE.putIfAbsent( key, path );
+				if (null != old)
+					path = old;
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Splits the key level by level the way the recursive string API did: the level is the first part of the split, the
+	 * rest of the key starts after its first dot.
+	 */
+	private static String[] split(String key, String regex) {
+		String[] ret = new String[0];
+		String k = key;
+		while (true) {
+			String[] keys = k.split( regex );
+			if (keys.length == 0)
+				return ret;
+
+			String[] r = new String[ret.length + 1];
+			System.arraycopy( ret, 0, r, 0, ret.length );
+			r[ret.length] = keys[0];
+			ret = r;
+
+			if (keys.length == 1)
+				return ret;
+			k = k.substring( k.indexOf( '.' ) + 1 );
+		}
+	}
+
+	boolean isEmpty() {
+		return null == setKeys;
+	}
+
+	/**
+	 * @return the levels set walks
+	 */
+	String[] setKeys() {
+		return setKeys;
+	}
+
+	/**
+	 * @return the levels get and remove walk, none for a key of dots only
+	 */
+	String[] getKeys() {
+		return getKeys;
+	}
+
+	/**
+	 * @return true if the walk of get and remove ends at the last level whatever is found there; otherwise a map found
+	 *         there gives null
+	 */
+	boolean getEnds() {
+		return getEnds;
+	}
+
+	/**
+	 * @return true if remove drops level i from its map when the walk stops there
+	 */
+	boolean isRemovable(int i) {
+		return removable[i];
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return (o instanceof WhoisPath) && key.equals( (( WhoisPath ) o).key );
+	}
+
+	@Override
+	public int hashCode() {
+		return key.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return key;
+	}
+
+}
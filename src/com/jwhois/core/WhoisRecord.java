@@ -0,0 +1,454 @@
+package com.jwhois.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only, compact copy of a {@link WhoisMap} for keeping many results in memory. Each map of the tree becomes a
+ * node of two arrays, keys and values, and each list of strings a String[]. The key arrays are shared: the answers of
+ * one server give maps with the same keys in the same order, and all of them point to one array of the keys. The
+ * rawdata is kept as one UTF-8 buffer, deflated if asked for records which are seldom read.
+ *
+ * The conversion keeps the order of the keys and every value, so {@link #toWhoisMap()} gives back an equal map and
+ * {@link #getJSON()} the same JSON as {@link WhoisMap#getJSON()}. The fields of the documented schema have typed
+ * getters; anything else is found with {@link #get(WhoisPath)}.
+ */
+public final class WhoisRecord {
+	/** The contacts of regrinfo. */
+	public static final String[]							CONTACTS			= { "owner", "admin", "bill", "tech", "zone",
+			"abuse", "network"											};
+
+	private static final WhoisPath							TYPE				= WhoisPath.of( "regyinfo.type" );
+	private static final WhoisPath							DOMAIN				= WhoisPath.of( "regyinfo.domain" );
+	private static final WhoisPath							REFERRER			= WhoisPath.of( "regyinfo.referrer" );
+	private static final WhoisPath							NAME				= WhoisPath.of( "regrinfo.domain.name" );
+	private static final WhoisPath							SPONSOR				= WhoisPath.of( "regrinfo.domain.sponsor" );
+	private static final WhoisPath							NSERVER				= WhoisPath.of( "regrinfo.domain.nserver" );
+	private static final WhoisPath							STATUS				= WhoisPath.of( "regrinfo.domain.status" );
+
+	private static final String[]							NO_KEYS				= new String[0];
+
+	// The shared key layouts. Once full the cache starts over, so one-offs can not keep the common ones out for good.
+	private static final int								MAX_LAYOUTS			= 1024;
+	private static final ConcurrentHashMap<List<String>, String[]>	LAYOUTS		= new ConcurrentHashMap<List<String>, String[]>();
+
+	private final Node										root;
+	private final long										created;
+	private final long										changed;
+	private final long										expires;
+
+	private WhoisRecord(Node root, long created, long changed, long expires) {
+		this.root = root;
+		this.created = created;
+		this.changed = changed;
+		this.expires = expires;
+	}
+
+	/**
+	 * Copies a whois map.
+	 *
+	 * @param map
+	 *            The whois map.
+	 * @return The record, null if the map is null.
+	 */
+	public static WhoisRecord of(WhoisMap map) {
+		return of( map, false );
+	}
+
+	/**
+	 * Copies a whois map.
+	 *
+	 * @param map
+	 *            The whois map.
+	 * @param deflate
+	 *            true to deflate the rawdata; it is inflated again on the first read of it.
+	 * @return The record, null if the map is null.
+	 */
+	public static WhoisRecord of(WhoisMap map, boolean deflate) {
+		if (null == map)
+			return null;
+		Map<String, Object> m = map.getMap();
+		Node root = null;
+		if (null != m) {
+			root = node( m );
+			rawdata( root, deflate );
+		}
+		return new WhoisRecord( root, map.getCreatedTime(), map.getChangedTime(), map.getExpiresTime() );
+	}
+
+	/**
+	 * @return A new whois map equal to the one the record was made of.
+	 */
+	@SuppressWarnings("unchecked")
+	public WhoisMap toWhoisMap() {
+		WhoisMap map = new WhoisMap( (null == root) ? null : ( Map<String, Object> ) decode( root ) );
+		map.setDates( created, changed, expires );
+		return map;
+	}
+
+	public String getJSON() {
+		if (null == root)
+			return JSONParser.toJSONString( null );
+		StringBuilder sb = new StringBuilder();
+		json( sb, root );
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the content at the path, as {@link WhoisMap#get(WhoisPath)} would on the map of the record.
+	 *
+	 * @param path
+	 *            The mapping path.
+	 * @return A copy of the content: a String, a List, a Map or the value as set.
+	 */
+	public Object get(WhoisPath path) {
+		return decode( find( path ) );
+	}
+
+	public Object get(String key) {
+		return get( WhoisPath.of( key ) );
+	}
+
+	public boolean hasRecord() {
+		return Boolean.TRUE.equals( find( WhoisMap.HASRECORD ) );
+	}
+
+	public String getType() {
+		return string( TYPE );
+	}
+
+	public String getDomain() {
+		return string( DOMAIN );
+	}
+
+	public List<String> getServers() {
+		return strings( WhoisMap.SERVERS );
+	}
+
+	public String getWhois() {
+		return string( WhoisMap.WHOIS );
+	}
+
+	public String getWhoisDetail() {
+		return string( WhoisMap.WHOISDETAIL );
+	}
+
+	public String getRegistrar() {
+		return string( WhoisMap.REGISTRAR );
+	}
+
+	public String getReferrer() {
+		return string( REFERRER );
+	}
+
+	public String getDomainName() {
+		return string( NAME );
+	}
+
+	public String getSponsor() {
+		return string( SPONSOR );
+	}
+
+	public List<String> getNameServers() {
+		return strings( NSERVER );
+	}
+
+	public List<String> getStatus() {
+		return strings( STATUS );
+	}
+
+	public String getCreated() {
+		return string( WhoisMap.CREATED );
+	}
+
+	public String getChanged() {
+		return string( WhoisMap.CHANGED );
+	}
+
+	public String getExpires() {
+		return string( WhoisMap.EXPIRES );
+	}
+
+	/**
+	 * @return {@link WhoisMap#getCreatedTime()} of the map the record was made of.
+	 */
+	public long getCreatedTime() {
+		return created;
+	}
+
+	/**
+	 * @return {@link WhoisMap#getChangedTime()} of the map the record was made of.
+	 */
+	public long getChangedTime() {
+		return changed;
+	}
+
+	/**
+	 * @return {@link WhoisMap#getExpiresTime()} of the map the record was made of.
+	 */
+	public long getExpiresTime() {
+		return expires;
+	}
+
+	/**
+	 * @param contact
+	 *            One of {@link #CONTACTS}.
+	 * @return A copy of the contact: a Map of its fields or a List of its lines; null if there is none.
+	 */
+	public Object getContact(String contact) {
+		return get( "regrinfo." + contact );
+	}
+
+	public List<String> getRawdata() {
+		return strings( WhoisMap.RAWDATA );
+	}
+
+	/**
+	 * @return the value at the path as stored, the walk of {@link WhoisMap#get(WhoisPath)}
+	 */
+	private Object find(WhoisPath path) {
+		if (null == root || null == path || path.isEmpty())
+			return null;
+
+		String[] keys = path.getKeys();
+		Node node = root;
+		for (int i = 0; i < keys.length; i++) {
+			Object v = node.get( keys[i] );
+			if (!(v instanceof Node) || (i == keys.length - 1 && path.getEnds()))
+				return v;
+			node = ( Node ) v;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the string at the path, the last one of a list
+	 */
+	private String string(WhoisPath path) {
+		Object v = find( path );
+		if (v instanceof String)
+			return ( String ) v;
+		if (v instanceof String[]) {
+			String[] arr = ( String[] ) v;
+			return (arr.length == 0) ? null : arr[arr.length - 1];
+		}
+		if (v instanceof RawLines) {
+			RawLines raw = ( RawLines ) v;
+			return raw.isEmpty() ? null : raw.get( raw.size() - 1 );
+		}
+		return null;
+	}
+
+	/**
+	 * @return the strings at the path, read only
+	 */
+	private List<String> strings(WhoisPath path) {
+		Object v = find( path );
+		if (v instanceof String)
+			return Collections.singletonList( ( String ) v );
+		if (v instanceof String[])
+			return Collections.unmodifiableList( Arrays.asList( ( String[] ) v ) );
+		if (v instanceof RawLines)
+			return ( RawLines ) v;
+		return null;
+	}
+
+	/**
+	 * Compacts a value: a map to a node, a list of strings to a String[] and any other list to a Values. Arrays set as
+	 * values are wrapped, so they are not read back as lists.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Object encode(Object v) {
+		if (null == v || v instanceof String || v instanceof Boolean || v instanceof RawLines)
+			return v;
+
+		if (v instanceof WhoisMap)
+			v = (( WhoisMap ) v).getMap();
+
+		if (v instanceof Map) {
+			for (Object k : (( Map<Object, Object> ) v).keySet()) {
+				if (!(k instanceof String))
+					return new Opaque( v );
+			}
+			return node( ( Map<String, Object> ) v );
+		}
+
+		if (v instanceof List) {
+			List<Object> list = ( List<Object> ) v;
+			boolean strings = true;
+			for (Object o : list) {
+				if (null != o && !(o instanceof String)) {
+					strings = false;
+					break;
+				}
+			}
+			if (strings)
+				return list.toArray( new String[list.size()] );
+
+			Object[] items = new Object[list.size()];
+			int i = 0;
+			for (Object o : list) {
+				items[i++] = encode( o );
+			}
+			return new Values( items );
+		}
+
+		if (v.getClass().isArray())
+			return new Opaque( v );
+		return v;
+	}
+
+	private static Node node(Map<String, Object> map) {
+		String[] keys = new String[map.size()];
+		Object[] values = new Object[keys.length];
+		int i = 0;
+		for (Map.Entry<String, Object> e : map.entrySet()) {
+			keys[i] = e.getKey();
+			values[i] = encode( e.getValue() );
+			i++;
+		}
+		return new Node( layout( keys ), values );
+	}
+
+	/**
+	 * Keeps the rawdata of the root as compact lines.
+	 */
+	private static void rawdata(Node root, boolean deflate) {
+		for (int i = 0; i < root.keys.length; i++) {
+			if (!WhoisMap.RAWDATA.getKey().equals( root.keys[i] ))
+				continue;
+			Object v = root.values[i];
+			RawLines raw = null;
+			if (v instanceof RawLines)
+				raw = ( RawLines ) v;
+			else if (v instanceof String[])
+				raw = RawLines.of( Arrays.asList( ( String[] ) v ) );
+			if (null != raw)
+				root.values[i] = deflate ? raw.deflate() : raw;
+		}
+	}
+
+	private static String[] layout(String[] keys) {
+		if (keys.length == 0)
+			return NO_KEYS;
+
+		List<String> k = Arrays.asList( keys );
+		String[] ret = LAYOUTS.get( k );
+		if (null == ret) {
+			if (LAYOUTS.size() >= MAX_LAYOUTS)
+				LAYOUTS.clear();
+			ret = LAYOUTS.putIfAbsent( k, keys );
+			if (null == ret)
+				ret = keys;
+		}
+		return ret;
+	}
+
+	/**
+	 * The reverse of {@link #encode(Object)}, into new mutable maps and lists.
+	 */
+	private static Object decode(Object v) {
+		if (v instanceof Node) {
+			Node node = ( Node ) v;
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			for (int i = 0; i < node.keys.length; i++) {
+				map.put( node.keys[i], decode( node.values[i] ) );
+			}
+			return map;
+		}
+		if (v instanceof String[]) {
+			return new ArrayList<String>( Arrays.asList( ( String[] ) v ) );
+		}
+		if (v instanceof RawLines) {
+			return new ArrayList<String>( ( RawLines ) v );
+		}
+		if (v instanceof Values) {
+			Object[] items = (( Values ) v).items;
+			List<Object> list = new ArrayList<Object>( items.length );
+			for (Object o : items) {
+				list.add( decode( o ) );
+			}
+			return list;
+		}
+		if (v instanceof Opaque) {
+			return (( Opaque ) v).value;
+		}
+		return v;
+	}
+
+	/**
+	 * Writes the JSON of a value the way {@link JSONParser#toJSONValue(Object)} writes its decoded form.
+	 */
+	private static void json(StringBuilder sb, Object v) {
+		if (v instanceof Node) {
+			Node node = ( Node ) v;
+			sb.append( '{' );
+			for (int i = 0; i < node.keys.length; i++) {
+				if (i > 0)
+					sb.append( ',' );
+				sb.append( '"' ).append( JSONParser.escape( node.keys[i] ) ).append( "\":" );
+				json( sb, node.values[i] );
+			}
+			sb.append( '}' );
+		}
+		else if (v instanceof Object[] || v instanceof Values || v instanceof RawLines) {
+			Object[] items = (v instanceof Values) ? (( Values ) v).items : (v instanceof RawLines) ? (( RawLines ) v)
+					.toArray() : ( Object[] ) v;
+			sb.append( '[' );
+			for (int i = 0; i < items.length; i++) {
+				if (i > 0)
+					sb.append( ',' );
+				json( sb, items[i] );
+			}
+			sb.append( ']' );
+		}
+		else if (v instanceof Opaque) {
+			sb.append( JSONParser.toJSONValue( (( Opaque ) v).value ) );
+		}
+		else {
+			sb.append( JSONParser.toJSONValue( v ) );
+		}
+	}
+
+	private static final class Node {
+		private final String[]	keys;
+		private final Object[]	values;
+
+		Node(String[] keys, Object[] values) {
+			this.keys = keys;
+			this.values = values;
+		}
+
+		Object get(String key) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i].equals( key ))
+					return values[i];
+			}
+			return null;
+		}
+	}
+
+	// A list with more than strings in it
+	private static final class Values {
+		private final Object[]	items;
+
+		Values(Object[] items) {
+			this.items = items;
+		}
+	}
+
+	// A value kept as set: an array, or a map with keys that are not strings
+	private static final class Opaque {
+		private final Object	value;
+
+		Opaque(Object value) {
+			this.value = value;
+		}
+	}
+
+}
@@ -1,13 +1,20 @@
 package com.jwhois.core;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 public final class XMLHelper {
-	private static Map<String, Map<String, String>>	servers		= null;
-	private static Map<String, Map<String, Object>>	translates	= null;
+	private static volatile Map<String, Map<String, String>>	servers		= null;
+	private static volatile Map<String, Map<String, Object>>	translates	= null;
+	private static volatile Map<String, ServerProfile>		profiles	= null;
+	private static volatile Map<String, RateLimiter.Limit>		limits		= null;
+
+	// Not a monitor: the XML is read under this lock, which would pin a virtual thread.
+	private static final ReentrantLock						lock		= new ReentrantLock();
 
 	public static void preloadXML() {
 		buildServers();
@@ -21,14 +28,19 @@ public final class XMLHelper {
 	public static void clean() {
 		servers = null;
 		translates = null;
+		profiles = null;
+		limits = null;
 	}
 
 	private static void buildServers() {
 		if (servers != null)
 			return;
 
-		SAXParserFactory factory = SAXParserFactory.newInstance();
+		lock.lock();
 		try {
+			if (servers != null)
+				return;
+			SAXParserFactory factory = SAXParserFactory.newInstance();
 			SAXParser parser = factory.newSAXParser();
 			ServerHandler handler = new ServerHandler();
 			parser.parse( Utility.getServersDB(), handler );
@@ -37,23 +49,61 @@ public final class XMLHelper {
 		catch (Exception e) {
 			Utility.logWarn( "XMLHelper::buildServers:", e );
 		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	private static void buildTranslates() {
 		if (translates != null)
 			return;
 
-		SAXParserFactory factory = SAXParserFactory.newInstance();
+		lock.lock();
 		try {
+			if (translates != null)
+				return;
+			SAXParserFactory factory = SAXParserFactory.newInstance();
 			SAXParser parser = factory.newSAXParser();
 			TranslateHandler handler = new TranslateHandler();
 			parser.parse( Utility.getTranslatesDB(), handler );
-			translates = handler.getMap();
+			Map<String, Map<String, Object>> map = handler.getMap();
+
+			// Compile every entry once; the profiles are published before the map they come from.
+			Map<String, ServerProfile> compiled = new HashMap<String, ServerProfile>();
+			for (Map.Entry<String, Map<String, Object>> e : map.entrySet()) {
+				compiled.put( e.getKey(), new ServerProfile( e.getKey(), e.getValue() ) );
+			}
+			profiles = compiled;
+			translates = map;
 		}
 		catch (Exception e) {
 			Utility.logWarn( "XMLHelper::buildTranslates:", e );
 		}
+		finally {
+			lock.unlock();
+		}
+	}
 
+	private static void buildLimits() {
+		if (limits != null)
+			return;
+
+		lock.lock();
+		try {
+			if (limits != null)
+				return;
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			SAXParser parser = factory.newSAXParser();
+			LimitHandler handler = new LimitHandler();
+			parser.parse( Utility.getLimitsDB(), handler );
+			limits = handler.getMap();
+		}
+		catch (Exception e) {
+			Utility.logWarn( "XMLHelper::buildLimits:", e );
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	static String getSpecialServer(String tld, boolean nonIcann) {
@@ -130,6 +180,37 @@ public final class XMLHelper {
 		return ret;
 	}
 
+	static RateLimiter.Limit getLimit(String host) {
+		RateLimiter.Limit ret = null;
+		if (null == limits) {
+			buildLimits();
+		}
+		if (null != limits) {
+			ret = limits.get( host.toLowerCase() );
+			if (null == ret)
+				ret = limits.get( "default" );
+		}
+		return ret;
+	}
+
+	/**
+	 * @param key
+	 *            the host name of the server
+	 * @return the compiled translates of the server, ServerProfile.RDAP for an "rdap:" server without its own,
+	 *         ServerProfile.EMPTY if it has none
+	 */
+	static ServerProfile getProfile(String key) {
+		if (null == profiles) {
+			buildTranslates();
+		}
+		Map<String, ServerProfile> map = profiles;
+		ServerProfile ret = (null == map || null == key) ? null : map.get( key.toLowerCase() );
+		if (null == ret && null != key && key.regionMatches( true, 0, WhoisClient.RDAP_PREFIX, 0,
+				WhoisClient.RDAP_PREFIX.length() ))
+			return ServerProfile.RDAP;
+		return (null == ret) ? ServerProfile.EMPTY : ret;
+	}
+
 	static String getTranslateAttr(String attrname, String key) {
 		String ret = "";
 		if (null == translates) {